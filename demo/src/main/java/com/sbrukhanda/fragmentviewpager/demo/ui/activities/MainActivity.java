@@ -19,7 +19,6 @@ import android.os.Bundle;
 import android.support.design.widget.TabLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.view.PagerAdapter;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
 import android.widget.TextView;
@@ -27,6 +26,7 @@ import android.widget.TextView;
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentPagerAdapter;
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentStatePagerAdapter;
 import com.sbrukhanda.fragmentviewpager.FragmentViewPager;
+import com.sbrukhanda.fragmentviewpager.PageViewPool;
 import com.sbrukhanda.fragmentviewpager.demo.R;
 import com.sbrukhanda.fragmentviewpager.demo.ui.fragments.CompoundFragment;
 import com.sbrukhanda.fragmentviewpager.demo.ui.fragments.SimpleFragment;
@@ -76,28 +76,19 @@ public class MainActivity extends AppCompatActivity
 
         mFragmentsPager = (FragmentViewPager) findViewById(R.id.pager_fragments);
         mFragmentsPager.setOffscreenPageLimit(1);
+        mFragmentsPager.setPageViewPool(new PageViewPool());
+        mFragmentsPager.setFastStartupEnabled(true);
+        mFragmentsPager.setJumpModeEnabled(true);
+        mFragmentsPager.setAutoVisibilityEnabled(true);
 
-        PagerAdapter pagerAdapter = new FragmentStateAdapter(getSupportFragmentManager());
+        FragmentStateAdapter pagerAdapter = new FragmentStateAdapter(getSupportFragmentManager());
+        pagerAdapter.setCommitMode(FragmentStatePagerAdapter.COMMIT_AFTER_INFLATE);
         mFragmentsPager.setAdapter(pagerAdapter);
 
         mFragmentsTab = (TabLayout) findViewById(R.id.tabs_main);
         mFragmentsTab.setupWithViewPager(mFragmentsPager);
     }
 
-    // *********************************************************************************************
-    @Override
-    protected void onResumeFragments() {
-        super.onResumeFragments();
-        mFragmentsPager.notifyPagerVisible();
-    }
-
-    // *********************************************************************************************
-    @Override
-    public void onPause() {
-        super.onPause();
-        mFragmentsPager.notifyPagerInvisible();
-    }
-
     // *********************************************************************************************
     public void logMessage(String msg) {
         // Return as nothing to log
@@ -19,21 +19,19 @@ import android.os.Bundle;
 import android.support.design.widget.TabLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.view.PagerAdapter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentPagerAdapter;
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentStatePagerAdapter;
-import com.sbrukhanda.fragmentviewpager.FragmentVisibilityListener;
 import com.sbrukhanda.fragmentviewpager.FragmentViewPager;
 import com.sbrukhanda.fragmentviewpager.demo.R;
 
 /**
  * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
  */
-public class CompoundFragment extends Fragment implements FragmentVisibilityListener
+public class CompoundFragment extends Fragment
 {
     // =============================================================================================
     // Constants
@@ -84,8 +82,15 @@ public class CompoundFragment extends Fragment implements FragmentVisibilityList
 
         mFragmentsPager = (FragmentViewPager) fragment.findViewById(R.id.pager_sub_fragments);
         mFragmentsPager.setOffscreenPageLimit(1);
+        mFragmentsPager.setFastStartupEnabled(true);
+        mFragmentsPager.setDeferredPopulationEnabled(true);
+        if (container instanceof FragmentViewPager) {
+            // Share the page views of the hosting pager
+            mFragmentsPager.setPageViewPool(((FragmentViewPager) container).getPageViewPool());
+        }
 
-        PagerAdapter pagerAdapter = new FragmentStateAdapter(getChildFragmentManager());
+        FragmentStateAdapter pagerAdapter = new FragmentStateAdapter(getChildFragmentManager());
+        pagerAdapter.setFragmentPoolSize(2);
         mFragmentsPager.setAdapter(pagerAdapter);
 
         mFragmentsTab = (TabLayout) fragment.findViewById(R.id.tabs_sub);
@@ -94,18 +99,6 @@ public class CompoundFragment extends Fragment implements FragmentVisibilityList
         return fragment;
     }
 
-    // *********************************************************************************************
-    @Override
-    public void onFragmentVisible() {
-        mFragmentsPager.notifyPagerVisible();
-    }
-
-    // *********************************************************************************************
-    @Override
-    public void onFragmentInvisible() {
-        mFragmentsPager.notifyPagerInvisible();
-    }
-
 
     // =============================================================================================
     // Inner Classes
@@ -145,6 +138,16 @@ public class CompoundFragment extends Fragment implements FragmentVisibilityList
             return SimpleFragment.newInstance(mName + " - " + position);
         }
 
+        @Override
+        public Class<? extends Fragment> getFragmentClass(int position) {
+            return SimpleFragment.class;
+        }
+
+        @Override
+        public void bindArguments(Bundle arguments, int position) {
+            SimpleFragment.bindArguments(arguments, mName + " - " + position);
+        }
+
         @Override
         public int getCount() {
             return 3;
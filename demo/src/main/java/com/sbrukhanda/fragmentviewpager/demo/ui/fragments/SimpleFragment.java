@@ -22,7 +22,10 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.sbrukhanda.fragmentviewpager.AsyncInflatablePage;
 import com.sbrukhanda.fragmentviewpager.FragmentVisibilityListener;
+import com.sbrukhanda.fragmentviewpager.PageViewPool;
+import com.sbrukhanda.fragmentviewpager.adapters.RecyclablePage;
 import com.sbrukhanda.fragmentviewpager.demo.R;
 import com.sbrukhanda.fragmentviewpager.demo.WorkThread;
 import com.sbrukhanda.fragmentviewpager.demo.ui.activities.MainActivity;
@@ -30,7 +33,8 @@ import com.sbrukhanda.fragmentviewpager.demo.ui.activities.MainActivity;
 /**
  * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
  */
-public class SimpleFragment extends Fragment implements FragmentVisibilityListener
+public class SimpleFragment extends Fragment
+    implements FragmentVisibilityListener, RecyclablePage, AsyncInflatablePage
 {
     // =============================================================================================
     // Constants
@@ -61,7 +65,7 @@ public class SimpleFragment extends Fragment implements FragmentVisibilityListen
     // *********************************************************************************************
     public static SimpleFragment newInstance(String fragmentName) {
         Bundle arguments = new Bundle();
-        arguments.putString(EXTRA_FRAGMENT_NAME, fragmentName);
+        bindArguments(arguments, fragmentName);
 
         SimpleFragment fragment = new SimpleFragment();
         fragment.setArguments(arguments);
@@ -69,10 +73,21 @@ public class SimpleFragment extends Fragment implements FragmentVisibilityListen
         return fragment;
     }
 
+    // *********************************************************************************************
+    public static void bindArguments(Bundle arguments, String fragmentName) {
+        arguments.putString(EXTRA_FRAGMENT_NAME, fragmentName);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public int getPageLayoutId() {
+        return R.layout.fragment_simple;
+    }
+
     // *********************************************************************************************
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View fragment = inflater.inflate(R.layout.fragment_simple, container, false);
+        View fragment = PageViewPool.inflate(inflater, R.layout.fragment_simple, container);
 
         Bundle arguments = getArguments();
         if (arguments != null) {
@@ -85,6 +100,21 @@ public class SimpleFragment extends Fragment implements FragmentVisibilityListen
         return fragment;
     }
 
+    // *********************************************************************************************
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // The view might be reused by another page
+        mNameLabel = null;
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void onRecycle() {
+        mNameLabel = null;
+        mName = null;
+    }
+
     // *********************************************************************************************
     @Override
     public void onFragmentVisible() {
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.app;
+
+/**
+ * Provides access to the package private saved state of {@code Fragment}s, which the public API
+ * only allows to replace through {@link Fragment#setInitialSavedState(Fragment.SavedState)}, but
+ * not to clear. <p />
+ *
+ * A removed {@code Fragment} keeps the state of its views (and, if its add was never executed, its
+ * initial saved state) and restores it once it is added again. Thus, a {@code Fragment} that is
+ * reused for another page must have its state cleared first.
+ *
+ * @hide
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public final class FragmentStateAccess
+{
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    private FragmentStateAccess() {
+        // Prevent class instantiation
+    }
+
+    /**
+     * @return {@code True} if the specified {@code Fragment} holds any saved state that would be
+     * restored once it is added, else {@code false}.
+     */
+    public static boolean hasSavedState(Fragment fragment) {
+        return ((fragment.mSavedFragmentState != null) || (fragment.mSavedViewState != null));
+    }
+
+    /**
+     * Clears the saved state of the specified inactive {@code Fragment}, so that it is added as a
+     * fresh instance.
+     */
+    public static void clearSavedState(Fragment fragment) {
+        if (fragment.mIndex >= 0) {
+            throw new IllegalStateException("Fragment already active");
+        }
+        fragment.mSavedFragmentState = null;
+        fragment.mSavedViewState = null;
+    }
+}
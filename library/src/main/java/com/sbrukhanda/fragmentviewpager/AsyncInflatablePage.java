@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+/**
+ * The interface for {@code Fragment} pages whose views can be inflated in the background before
+ * they are added, see
+ * {@link com.sbrukhanda.fragmentviewpager.adapters.FragmentStatePagerAdapter#COMMIT_AFTER_INFLATE}.
+ * <p />
+ *
+ * The layout is inflated into the {@link PageViewPool} of the pager, thus an inflatable page must
+ * create its view in {@code onCreateView()} through
+ * {@link PageViewPool#inflate(android.view.LayoutInflater, int, android.view.ViewGroup)}, and the
+ * pager must have a pool, see {@link FragmentViewPager#setPageViewPool(PageViewPool)}. <p />
+ *
+ * <b>Note:</b> The layout is inflated by a plain {@code LayoutInflater} of the pager's
+ * {@code Context}, without the factories that the {@code Activity} installs on its own
+ * {@code LayoutInflater}, as those are not safe to call off the main thread. Thus, in contrast to
+ * a layout inflated on the main thread:
+ * <ul>
+ *     <li>AppCompat does not substitute its widgets, e.g. a {@code TextView} is not inflated as an
+ *     {@code AppCompatTextView}, and does not apply tinting or {@code android:theme} attributes
+ *     below API 21.</li>
+ *     <li>{@code <fragment>} tags are not supported.</li>
+ *     <li>Unqualified view names are resolved against the framework packages only.</li>
+ * </ul>
+ * A page that becomes the primary page before its view is ready is inflated on the main thread
+ * with all factories, thus such differences may show up between pages of the same class. Pages
+ * whose layouts depend on the factories must not implement this interface. The layout must also
+ * only consist of views whose constructors can run off the main thread.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public interface AsyncInflatablePage
+{
+    /**
+     * @return The layout resource that this page inflates in {@code onCreateView()}. Called before
+     * the page is added, thus it may only depend on the arguments of the page.
+     */
+    int getPageLayoutId();
+}
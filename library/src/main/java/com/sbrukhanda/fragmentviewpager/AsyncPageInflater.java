@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Inflates the layouts of {@link AsyncInflatablePage}s on a shared background thread and parks
+ * the inflated views in a {@link PageViewPool}, from which the pages pick them up once they are
+ * added. <p />
+ *
+ * Layouts are inflated without the factories of the {@code Activity}, i.e. without e.g. the
+ * widget substitution of AppCompat, see {@link AsyncInflatablePage} for the consequences. A layout
+ * that fails to inflate in the background is inflated on the main thread instead. Must only be
+ * used from the main thread.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public final class AsyncPageInflater
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String TAG = AsyncPageInflater.class.getSimpleName();
+
+    private static final int MSG_INFLATED = 1;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private static AsyncPageInflater sInstance;
+
+    private final Handler mMainHandler;
+    private final Handler mWorkerHandler;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    private AsyncPageInflater() {
+        mMainHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                ((Request) msg.obj).finish();
+                return true;
+            }
+        });
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mWorkerHandler = new Handler(thread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                ((Request) msg.obj).inflate();
+                mMainHandler.obtainMessage(MSG_INFLATED, msg.obj).sendToTarget();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return The shared {@code AsyncPageInflater}, whose background thread is started on first
+     * use.
+     */
+    public static AsyncPageInflater getInstance() {
+        if (sInstance == null) {
+            sInstance = new AsyncPageInflater();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Inflates the layout of the specified page in the background and parks it in the specified
+     * pool. The specified listener is notified on the main thread once the view is parked, or once
+     * inflating failed. Nothing is inflated if the pool of the layout has no free slot, since the
+     * view could not be parked.
+     *
+     * @param page The page whose layout to inflate.
+     * @param container The container whose layout parameters to inflate with.
+     * @param pool The pool to park the inflated view in.
+     * @param listener The listener to notify, or {@code null}.
+     * @return {@code True} if inflating was started and the listener will be notified, else
+     * {@code false} if the pool of the layout is full.
+     */
+    public boolean inflate(AsyncInflatablePage page, ViewGroup container, PageViewPool pool,
+                           OnPageInflatedListener listener) {
+        if (!pool.reserve(page.getPageLayoutId())) return false;
+
+        Request request = new Request(page, container, pool, listener);
+        mWorkerHandler.obtainMessage(0, request).sendToTarget();
+        return true;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * The listener for pages whose layouts were inflated in the background.
+     */
+    public interface OnPageInflatedListener
+    {
+        /**
+         * Called on the main thread once the view of the specified page was parked in its pool.
+         *
+         * @param page The page whose layout was inflated.
+         * @param view The inflated view, or {@code null} if inflating failed.
+         */
+        void onPageInflated(AsyncInflatablePage page, View view);
+    }
+
+    /**
+     * A single background inflation.
+     */
+    private static final class Request
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private final AsyncInflatablePage    mPage;
+        private final int                    mLayoutId;
+        private final ViewGroup              mContainer;
+        private final PageViewPool           mPool;
+        private final OnPageInflatedListener mListener;
+        private final LayoutInflater         mInflater;
+
+        /**
+         * The inflated view, or {@code null} if inflating in the background failed.
+         */
+        private View mView;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        Request(AsyncInflatablePage page, ViewGroup container, PageViewPool pool,
+                OnPageInflatedListener listener) {
+            mPage = page;
+            mLayoutId = page.getPageLayoutId();
+            mContainer = container;
+            mPool = pool;
+            mListener = listener;
+            mInflater = new BasicInflater(container.getContext());
+        }
+
+        /**
+         * Inflates the layout, called on the background thread.
+         */
+        void inflate() {
+            try {
+                mView = mInflater.inflate(mLayoutId, mContainer, false);
+            } catch (RuntimeException ex) {
+                Log.w(TAG, "Failed to inflate in the background, falling back to the main thread",
+                    ex);
+            }
+        }
+
+        /**
+         * Parks the inflated view and notifies the listener, called on the main thread.
+         */
+        void finish() {
+            View view = mView;
+            if (view == null) {
+                try {
+                    view = LayoutInflater.from(mContainer.getContext())
+                        .inflate(mLayoutId, mContainer, false);
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, "Failed to inflate page layout", ex);
+                }
+            }
+            mPool.offer(view, mLayoutId);
+            if (mListener != null) {
+                mListener.onPageInflated(mPage, view);
+            }
+        }
+    }
+
+    /**
+     * A {@code LayoutInflater} without factories, which resolves unqualified view names against
+     * the framework packages.
+     */
+    private static final class BasicInflater extends LayoutInflater
+    {
+        // =========================================================================================
+        // Constants
+        // =========================================================================================
+
+        private static final String[] CLASS_PREFIXES = {
+            "android.widget.",
+            "android.webkit.",
+            "android.app."
+        };
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        BasicInflater(Context context) {
+            super(context);
+        }
+
+        // *****************************************************************************************
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+            return new BasicInflater(newContext);
+        }
+
+        // *****************************************************************************************
+        @Override
+        protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+            for (String prefix : CLASS_PREFIXES) {
+                try {
+                    View view = createView(name, prefix, attrs);
+                    if (view != null) return view;
+                } catch (ClassNotFoundException ex) {
+                    // Try the next package
+                }
+            }
+            return super.onCreateView(name, attrs);
+        }
+    }
+}
@@ -16,17 +16,31 @@
 package com.sbrukhanda.fragmentviewpager;
 
 import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.DataSetObserver;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
 import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewPager;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentPagerAdapter;
 import com.sbrukhanda.fragmentviewpager.adapters.FragmentStatePagerAdapter;
+import com.sbrukhanda.fragmentviewpager.adapters.FragmentTransactionBatch;
+import com.sbrukhanda.fragmentviewpager.adapters.PageInflater;
 import com.sbrukhanda.fragmentviewpager.utils.Logger;
 
-import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * An extended {@link ViewPager} with added functionality for working with {@code Fragment}s.<p />
@@ -34,7 +48,9 @@ import java.lang.ref.WeakReference;
  * The major feature of this {@code ViewPager} is that it provides callbacks for the visibility
  * state of its {@code Fragment} pages through the {@link FragmentVisibilityListener} interface.
  * Also, it is possible to nest a {@code FragmentViewPager} inside another {@code FragmentViewPager}
- * and still maintain this functionality.<p />
+ * and still maintain this functionality. A nested {@code FragmentViewPager} registers with the
+ * nearest enclosing one once it is attached to the window, which then notifies it whenever the page
+ * hosting it becomes visible or invisible.<p />
  *
  * Instructions on how to properly use {@code FragmentViewPager}:
  * <ol>
@@ -75,6 +91,11 @@ import java.lang.ref.WeakReference;
  *         </pre>
  *     </li>
  *     <li>
+ *         Alternatively to the previous two steps, call {@link #setAutoVisibilityEnabled(boolean)}
+ *         in order to have the visibility derived from the lifecycle of the hosting
+ *         {@code FragmentActivity} and the state of its window.
+ *     </li>
+ *     <li>
  *         Implement {@link FragmentVisibilityListener} on all {@code Fragment}s that you wish to
  *         receive callbacks for their visibility state.
  *     </li>
@@ -95,6 +116,40 @@ public class FragmentViewPager extends ViewPager
 
     private static final String TAG = FragmentViewPager.class.getSimpleName();
 
+    /**
+     * Policies of dispatching the visible callback of a newly selected page, see
+     * {@link #setVisibilityDispatchPolicy(int)}.
+     */
+    public static final int DISPATCH_IMMEDIATE       = 0;
+    public static final int DISPATCH_ON_SCROLL_IDLE  = 1;
+    public static final int DISPATCH_AFTER_MIN_DWELL = 2;
+
+    /**
+     * The default minimum time, in milliseconds, that a page must stay selected before it is
+     * notified that it is visible with {@link #DISPATCH_AFTER_MIN_DWELL}.
+     */
+    public static final long DEFAULT_MIN_DWELL_TIME = 300;
+
+    /**
+     * The default minimum time, in milliseconds, between two reports of the visible fraction of a
+     * page, see {@link #setVisibilityFractionInterval(long)}.
+     */
+    public static final long DEFAULT_VISIBILITY_FRACTION_INTERVAL = 50;
+
+    /**
+     * The minimum speed, in pages per second, and the minimum distance from the current item, in
+     * pages, of a drag at which the next page in its direction is prefetched.
+     */
+    private static final float PREFETCH_MIN_VELOCITY = 1f;
+    private static final float PREFETCH_MIN_OFFSET   = 0.1f;
+
+    /**
+     * The maximum number of measure passes of the outermost {@code FragmentViewPager} that are
+     * repeated in order to measure the pages of batched transactions, i.e. the pages of nested
+     * {@code FragmentViewPager}s down to this depth are created and measured within one measure.
+     */
+    private static final int MAX_BATCHED_MEASURE_PASSES = 3;
+
 
     // =============================================================================================
     // Fields
@@ -102,6 +157,13 @@ public class FragmentViewPager extends ViewPager
 
     private InternalOnPageChangeListener mInternalOnPageChangeListener;
 
+    /**
+     * The current adapter, typed once when it is set in order to spare the visibility callbacks
+     * from type checks. At most one of them is non-{@code null}.
+     */
+    private FragmentPagerAdapter      mFragmentPagerAdapter;
+    private FragmentStatePagerAdapter mFragmentStatePagerAdapter;
+
     /**
      * Indicates whether this {@code FragmentViewPager}'s is visible to the user or not.
      *
@@ -119,6 +181,168 @@ public class FragmentViewPager extends ViewPager
      */
     private boolean mIsPagingEnabled;
 
+    /**
+     * The pool into which the views of destroyed pages are parked, or {@code null}.
+     *
+     * @see #setPageViewPool(PageViewPool)
+     */
+    private PageViewPool mPageViewPool;
+
+    /**
+     * Prefetches pages ahead of drags, or {@code null} if prefetching is disabled.
+     *
+     * @see #setPrefetchEnabled(boolean)
+     */
+    private PagePrefetcher mPagePrefetcher;
+
+    /**
+     * Releases the offscreen pages held back until the first frame is drawn, or {@code null} if
+     * fast startup is disabled.
+     *
+     * @see #setFastStartupEnabled(boolean)
+     */
+    private StartupReleaser mStartupReleaser;
+
+    /**
+     * Indicates whether long smooth scrolls to far pages skip the intermediate pages.
+     *
+     * @see #setJumpModeEnabled(boolean)
+     */
+    private boolean mIsJumpModeEnabled;
+
+    /**
+     * Indicates whether setting the adapter is deferred until this {@code FragmentViewPager}
+     * becomes visible.
+     *
+     * @see #setDeferredPopulationEnabled(boolean)
+     */
+    private boolean mIsDeferredPopulationEnabled;
+
+    /**
+     * The adapter whose setting is deferred, or {@code null}, and the item to show once it is set,
+     * or {@code -1}.
+     */
+    private PagerAdapter mDeferredAdapter;
+    private int          mDeferredCurrentItem = -1;
+
+    /**
+     * The nearest enclosing {@code FragmentViewPager} and its page hosting this one, or
+     * {@code null} if this {@code FragmentViewPager} is not nested or not attached.
+     */
+    private FragmentViewPager mParentPager;
+    private View              mHostPage;
+
+    /**
+     * The attached {@code FragmentViewPager}s that are nested inside the pages of this one.
+     */
+    private final ArrayList<FragmentViewPager> mChildPagers = new ArrayList<FragmentViewPager>();
+
+    /**
+     * The batch of the transactions committed while measuring or populating after a scroll has
+     * settled, which is used by all nested {@code FragmentViewPager}s if this one is the outermost,
+     * see {@link #getTransactionBatch()}.
+     */
+    private final FragmentTransactionBatch mTransactionBatch = new FragmentTransactionBatch();
+
+    /**
+     * Indicates whether the batch of this outermost {@code FragmentViewPager} is opened for the
+     * pages populated after a scroll has settled, see {@link #openSettleBatch()}.
+     */
+    private boolean mIsSettleBatchOpen;
+
+    /**
+     * Inflates the views of offscreen {@link AsyncInflatablePage}s into the page view pool of this
+     * {@code FragmentViewPager} on behalf of its adapter.
+     */
+    private final PageInflater mPageInflater = new PageInflater() {
+        @Override
+        public boolean inflate(Fragment page, ViewGroup container,
+                               final OnPageInflatedListener listener) {
+            if ((mPageViewPool == null) || !(page instanceof AsyncInflatablePage)) return false;
+
+            return AsyncPageInflater.getInstance().inflate((AsyncInflatablePage) page, container,
+                mPageViewPool, new AsyncPageInflater.OnPageInflatedListener() {
+                    @Override
+                    public void onPageInflated(AsyncInflatablePage inflatedPage, View view) {
+                        listener.onPageInflated((Fragment) inflatedPage);
+                    }
+                });
+        }
+    };
+
+    /**
+     * Forgets the currently active {@code Fragment} page once it is replaced by a data set change.
+     * Registered before the observer of {@code ViewPager}, thus notified after the pages were
+     * updated.
+     */
+    private final DataSetObserver mAdapterObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            if (mInternalOnPageChangeListener != null) {
+                mInternalOnPageChangeListener.onDataSetChanged();
+            }
+        }
+    };
+
+    /**
+     * Executes the batched transactions if no measure pass of the outermost
+     * {@code FragmentViewPager} executed them since they were collected.
+     */
+    private final Runnable mTransactionBatchExecutor = new Runnable() {
+        @Override
+        public void run() {
+            FragmentViewPager root = getRootPager();
+            root.closeSettleBatch();
+            root.mTransactionBatch.execute();
+        }
+    };
+
+    /**
+     * Indicates whether the visibility of this {@code FragmentViewPager} is derived from the state
+     * of its {@code Activity} and window.
+     *
+     * @see #setAutoVisibilityEnabled(boolean)
+     */
+    private boolean mIsAutoVisibilityEnabled;
+
+    /**
+     * The lifecycle of the {@code Activity} this {@code FragmentViewPager} is registered with, or
+     * {@code null}, and the last resumed state reported by it.
+     */
+    private PagerLifecycleFragment mPagerLifecycle;
+    private boolean                mIsHostResumed;
+
+    /**
+     * The policy of dispatching the visible callback of a newly selected page and the minimum time
+     * it must stay selected with {@link #DISPATCH_AFTER_MIN_DWELL}.
+     *
+     * @see #setVisibilityDispatchPolicy(int)
+     */
+    private int  mVisibilityDispatchPolicy = DISPATCH_IMMEDIATE;
+    private long mMinDwellTime             = DEFAULT_MIN_DWELL_TIME;
+
+    /**
+     * Indicates whether the visible callback of a newly selected page is dispatched only after the
+     * pager has drawn a full frame showing it.
+     *
+     * @see #setDispatchVisibleAfterDraw(boolean)
+     */
+    private boolean mIsDispatchVisibleAfterDraw;
+
+    /**
+     * Reports the visible fractions of pages while scrolling, or {@code null} if disabled.
+     *
+     * @see #setVisibilityFractionEnabled(boolean)
+     */
+    private VisibilityFractionTracker mVisibilityFractionTracker;
+
+    /**
+     * The minimum time between two reports of the visible fraction of a page, and the sorted
+     * fractions whose crossing is reported right away.
+     */
+    private long    mVisibilityFractionInterval   = DEFAULT_VISIBILITY_FRACTION_INTERVAL;
+    private float[] mVisibilityFractionThresholds = { 0.5f, 1f };
+
 
     // =============================================================================================
     // Constructors & Methods
@@ -153,15 +377,79 @@ public class FragmentViewPager extends ViewPager
         mIsPagingEnabled = true;
     }
 
-    /** {@inheritDoc}  */
+    /**
+     * {@inheritDoc} <p />
+     *
+     * If deferred population is enabled, the adapter is only set once this
+     * {@code FragmentViewPager} becomes visible, see
+     * {@link #setDeferredPopulationEnabled(boolean)}.
+     */
     @Override
     public void setAdapter(PagerAdapter adapter) {
-        if ((adapter instanceof FragmentPagerAdapter) || adapter instanceof FragmentStatePagerAdapter) {
+        if (mIsDeferredPopulationEnabled && !mIsPagerVisible && (adapter != null)
+            && (super.getAdapter() == null)) {
+            Logger.d(TAG, "Deferring population until visible.");
+            mDeferredAdapter = adapter;
+            return;
+        }
+        mDeferredAdapter = null;
+        mDeferredCurrentItem = -1;
+        applyAdapter(adapter);
+    }
+
+    /**
+     * {@inheritDoc} <p />
+     *
+     * Returns the deferred adapter, if any, so that e.g. a {@code TabLayout} can be set up before
+     * the pages are populated.
+     */
+    @Override
+    public PagerAdapter getAdapter() {
+        return ((mDeferredAdapter != null) ? mDeferredAdapter : super.getAdapter());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCurrentItem() {
+        return ((mDeferredCurrentItem >= 0) ? mDeferredCurrentItem : super.getCurrentItem());
+    }
+
+    // *********************************************************************************************
+    private void applyAdapter(PagerAdapter adapter) {
+        if (mInternalOnPageChangeListener != null) {
+            mInternalOnPageChangeListener.reset();
+        }
+        if (mPagePrefetcher != null) {
+            mPagePrefetcher.cancel();
+        }
+        if ((mStartupReleaser != null) && mStartupReleaser.isPending()) {
+            setOffscreenPagesHeld(false);
+        }
+        if ((mFragmentStatePagerAdapter != null) && (mFragmentStatePagerAdapter != adapter)) {
+            mFragmentStatePagerAdapter.releaseSpilledStates();
+        }
+        setTransactionBatch(null);
+        setPageInflater(null);
+        if ((mFragmentPagerAdapter != null) || (mFragmentStatePagerAdapter != null)) {
+            super.getAdapter().unregisterDataSetObserver(mAdapterObserver);
+        }
+        mFragmentPagerAdapter = ((adapter instanceof FragmentPagerAdapter)
+            ? (FragmentPagerAdapter) adapter : null);
+        mFragmentStatePagerAdapter = ((adapter instanceof FragmentStatePagerAdapter)
+            ? (FragmentStatePagerAdapter) adapter : null);
+        setTransactionBatch(getTransactionBatch());
+        setPageInflater(mPageInflater);
+
+        if ((mFragmentPagerAdapter != null) || (mFragmentStatePagerAdapter != null)) {
             attachInternalOnPageChangeListener();
+            adapter.registerDataSetObserver(mAdapterObserver);
         } else {
             Logger.w(TAG, "Provided PagerAdapter does not support Fragment visibility events.");
             detachInternalOnPageChangeListener();
         }
+        if ((mStartupReleaser != null) && mStartupReleaser.isPending()) {
+            setOffscreenPagesHeld(true);
+        }
         super.setAdapter(adapter);
     }
 
@@ -184,13 +472,13 @@ public class FragmentViewPager extends ViewPager
     /**
      * Notifies this {@code FragmentViewPager} that it is visible to the user.<p />
      *
-     * Most commonly called from {@code onResumeFragments()} method of the hosting {@code Activity}
-     * or from {@code FragmentVisibilityListener.onFragmentVisible()} method of the hosting
-     * {@code Fragment} in case this {@code FragmentViewPager} is nested inside another
-     * {@code FragmentViewPager}.
+     * Most commonly called from {@code onResumeFragments()} method of the hosting
+     * {@code Activity}. A {@code FragmentViewPager} nested inside another
+     * {@code FragmentViewPager} is notified by the enclosing one.
      */
     public void notifyPagerVisible() {
         mIsPagerVisible = true;
+        populateDeferred();
         if (mInternalOnPageChangeListener != null) {
             mInternalOnPageChangeListener.updateCurrentFragmentState(true);
         }
@@ -199,10 +487,9 @@ public class FragmentViewPager extends ViewPager
     /**
      * Notifies this {@code FragmentViewPager} that it is no longer visible to the user.<p />
      *
-     * Most commonly called from {@code onPause()} method of the hosting {@code Activity} or from
-     * {@code FragmentVisibilityListener.onFragmentInvisible()} method of the hosting
-     * {@code Fragment} in case this {@code FragmentViewPager} is nested inside another
-     * {@code FragmentViewPager}.
+     * Most commonly called from {@code onPause()} method of the hosting {@code Activity}. A
+     * {@code FragmentViewPager} nested inside another {@code FragmentViewPager} is notified by the
+     * enclosing one.
      */
     public void notifyPagerInvisible() {
         if (mInternalOnPageChangeListener != null) {
@@ -211,150 +498,966 @@ public class FragmentViewPager extends ViewPager
         mIsPagerVisible = false;
     }
 
-    /** @hide */
-    @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        return ((mIsPagingEnabled) ? super.onTouchEvent(event) : false);
+    /**
+     * @return The pool into which the views of destroyed pages are parked, or {@code null}.
+     * @see #setPageViewPool(PageViewPool)
+     */
+    public PageViewPool getPageViewPool() {
+        return mPageViewPool;
     }
 
-    /** @hide */
-    @Override
-    public boolean onInterceptTouchEvent(MotionEvent event) {
-        return ((mIsPagingEnabled) ? super.onInterceptTouchEvent(event) : false);
+    /**
+     * Sets the pool into which the views of destroyed pages are parked, in order to be reused by
+     * the next pages inflating the same layouts through
+     * {@link PageViewPool#inflate(android.view.LayoutInflater, int, android.view.ViewGroup)}. The
+     * same pool may be set on multiple {@code FragmentViewPager}s of the same {@code Activity},
+     * e.g. on sibling and nested ones.
+     *
+     * @param pool The pool to use, or {@code null} in order to not pool page views.
+     */
+    public void setPageViewPool(PageViewPool pool) {
+        mPageViewPool = pool;
     }
 
     /**
-     * @return {@code True} if this {@code FragmentViewPager}'s paging capabilities (i.e. user swipe
-     * events will cause a page change) are enabled, else {@code false}.
+     * @return The policy of dispatching the visible callback of a newly selected page.
+     * @see #setVisibilityDispatchPolicy(int)
      */
-    public boolean isPagingEnabled() {
-        return mIsPagingEnabled;
+    public int getVisibilityDispatchPolicy() {
+        return mVisibilityDispatchPolicy;
     }
 
     /**
-     * Enables/Disables this {@code FragmentViewPager}'s paging capabilities (i.e. user swipe events
-     * will cause a page change).
+     * Sets the policy of dispatching the visible callback of a newly selected page. <p />
      *
-     * @param enabled Whether to enable or disable this {@code FragmentViewPager}'s paging capabilities.
+     * By default ({@link #DISPATCH_IMMEDIATE}), every page that a scroll settles on is notified
+     * right away, including the pages that rapid swiping passes through. With
+     * {@link #DISPATCH_ON_SCROLL_IDLE}, only the page on which the scroll comes to rest is
+     * notified, once the pager becomes idle. With {@link #DISPATCH_AFTER_MIN_DWELL}, a page is
+     * only notified once it stayed selected for the minimum dwell time, see
+     * {@link #setMinDwellTime(long)}. Pages that are left before being notified get no callbacks
+     * at all, while the invisible callback of the previously visible page is always dispatched
+     * right away.
+     *
+     * @param policy One of {@link #DISPATCH_IMMEDIATE}, {@link #DISPATCH_ON_SCROLL_IDLE} and
+     * {@link #DISPATCH_AFTER_MIN_DWELL}.
      */
-    public void setPagingEnabled(boolean enabled) {
-        mIsPagingEnabled = enabled;
+    public void setVisibilityDispatchPolicy(int policy) {
+        mVisibilityDispatchPolicy = policy;
     }
 
-
-    // =============================================================================================
-    // Inner classes
-    // =============================================================================================
+    /**
+     * @return The minimum time, in milliseconds, that a page must stay selected before it is
+     * notified that it is visible with {@link #DISPATCH_AFTER_MIN_DWELL}.
+     */
+    public long getMinDwellTime() {
+        return mMinDwellTime;
+    }
 
     /**
-     * A {@code ViewPager.SimpleOnPageChangeListener} that is responsible for notifying
-     * {@code Fragment} pages about their visibility state.
+     * Sets the minimum time that a page must stay selected before it is notified that it is
+     * visible with {@link #DISPATCH_AFTER_MIN_DWELL}.
+     *
+     * @param minDwellTime The minimum time in milliseconds.
      */
-    private class InternalOnPageChangeListener extends ViewPager.SimpleOnPageChangeListener
-    {
-        // =========================================================================================
-        // Fields
-        // =========================================================================================
+    public void setMinDwellTime(long minDwellTime) {
+        if (minDwellTime < 0) {
+            throw new IllegalArgumentException("Negative minimum dwell time: " + minDwellTime);
+        }
+        mMinDwellTime = minDwellTime;
+    }
 
-        /**
-         * Contains the the state of the currently active {@code Fragment} page.
-         */
-        private FragmentContainer mFragmentContainer;
+    /**
+     * @return {@code True} if the visible fractions of pages are reported while scrolling, else
+     * {@code false}.
+     * @see #setVisibilityFractionEnabled(boolean)
+     */
+    public boolean isVisibilityFractionEnabled() {
+        return (mVisibilityFractionTracker != null);
+    }
 
+    /**
+     * Enables/Disables reporting the visible fractions of pages while scrolling. While enabled,
+     * pages implementing {@link FragmentVisibilityFractionListener} are notified about their
+     * visible fraction whenever it changes, throttled by
+     * {@link #setVisibilityFractionInterval(long)}, and right away when it crosses one of the
+     * thresholds set by
+     * {@link #setVisibilityFractionThresholds(float...)}. Reports are only made while this
+     * {@code FragmentViewPager} is visible and involve no allocations.
+     *
+     * @param enabled Whether to enable or disable reporting visible fractions.
+     */
+    public void setVisibilityFractionEnabled(boolean enabled) {
+        if (enabled && (mVisibilityFractionTracker == null)) {
+            mVisibilityFractionTracker = new VisibilityFractionTracker();
+            addOnPageChangeListener(mVisibilityFractionTracker);
+        } else if (!enabled && (mVisibilityFractionTracker != null)) {
+            removeOnPageChangeListener(mVisibilityFractionTracker);
+            mVisibilityFractionTracker = null;
+        }
+    }
 
-        // =========================================================================================
-        // Constructors & Methods
-        // =========================================================================================
+    /**
+     * Sets the minimum time between two reports of the visible fraction of a page, except for
+     * the fractions {@code 0} and {@code 1}, which are always reported.
+     *
+     * @param interval The minimum time in milliseconds, or {@code 0} in order to report every
+     * change.
+     */
+    public void setVisibilityFractionInterval(long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Negative interval: " + interval);
+        }
+        mVisibilityFractionInterval = interval;
+    }
 
-        // *****************************************************************************************
-        public InternalOnPageChangeListener() {
-            mFragmentContainer = new FragmentContainer();
+    /**
+     * Sets the visible fractions whose crossing is reported right away, {@code 0.5} and {@code 1}
+     * by default.
+     *
+     * @param thresholds The fractions, each greater than {@code 0} and at most {@code 1}.
+     */
+    public void setVisibilityFractionThresholds(float... thresholds) {
+        float[] sorted = thresholds.clone();
+        Arrays.sort(sorted);
+        for (float threshold : sorted) {
+            if ((threshold <= 0) || (threshold > 1)) {
+                throw new IllegalArgumentException("Invalid threshold: " + threshold);
+            }
         }
+        mVisibilityFractionThresholds = sorted;
+    }
 
-        // *****************************************************************************************
-        @Override
-        public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
-            // Return if page position has not changed or animating between pages
-            if ((position == mFragmentContainer.getPosition()) || (positionOffset != 0)) return;
+    /**
+     * @return {@code True} if the visible callback of a newly selected page is dispatched after the
+     * next frame is drawn, else {@code false}.
+     * @see #setDispatchVisibleAfterDraw(boolean)
+     */
+    public boolean isDispatchVisibleAfterDraw() {
+        return mIsDispatchVisibleAfterDraw;
+    }
 
-            // Notify Fragment pages if this {@code FragmentViewPager} is visible
-            if (mIsPagerVisible) {
-                // Try to notify previously visible Fragment page that is no longer visible
-                Fragment currentFragment = mFragmentContainer.getFragment();
-                if (currentFragment != null) {
-                    notifyFragmentInvisible();
-                }
+    /**
+     * Enables/Disables dispatching the visible callback of a newly selected page after the next
+     * frame. While enabled, {@code onFragmentVisible()} is not called within the frame in which a
+     * scroll settles, but only once the pager has drawn a full frame showing the page, so that
+     * heavy work in the callback does not stall the end of the scroll animation. The invisible
+     * callback of the previously visible page is still dispatched right away. Applies on top of
+     * the visibility dispatch policy, see {@link #setVisibilityDispatchPolicy(int)}.
+     *
+     * @param enabled Whether to enable or disable dispatching after the next frame.
+     */
+    public void setDispatchVisibleAfterDraw(boolean enabled) {
+        mIsDispatchVisibleAfterDraw = enabled;
+    }
 
-                // Try to notify newly selected Fragment page that it is visible
-                Fragment selectedFragment = getFragment(position);
-                if (selectedFragment != null) {
-                    // Update state with the newly selected Fragment page
-                    mFragmentContainer.setFragment(selectedFragment);
+    /**
+     * @return {@code True} if the visibility of this {@code FragmentViewPager} is derived from the
+     * state of its {@code Activity} and window, else {@code false}.
+     * @see #setAutoVisibilityEnabled(boolean)
+     */
+    public boolean isAutoVisibilityEnabled() {
+        return mIsAutoVisibilityEnabled;
+    }
 
-                    if (selectedFragment.isAdded()) {
-                        // Notify newly selected Fragment page only if it is still attached
-                        notifyFragmentVisible();
-                    } else {
-                        Logger.e(TAG, "Fragment [" + selectedFragment.getClass().getSimpleName() + "] not added.");
-                    }
-                }
+    /**
+     * Enables/Disables automatic visibility. While enabled, {@link #notifyPagerVisible()} and
+     * {@link #notifyPagerInvisible()} are called automatically, i.e. this
+     * {@code FragmentViewPager} is visible while its {@code FragmentActivity} is resumed, its
+     * window is visible, and it is shown itself. Turning the screen off pauses the
+     * {@code Activity}, thus it is covered as well. Dialogs and popups shown on top of the
+     * {@code Activity} only take away the focus of its window, thus they do not affect the
+     * visibility. <p />
+     *
+     * The resumed state is tracked by a headless {@link PagerLifecycleFragment} that is added to
+     * the {@code FragmentActivity}. {@code FragmentViewPager}s nested inside another
+     * {@code FragmentViewPager} are always notified by the enclosing one instead.
+     *
+     * @param enabled Whether to enable or disable automatic visibility.
+     */
+    public void setAutoVisibilityEnabled(boolean enabled) {
+        mIsAutoVisibilityEnabled = enabled;
+        if (enabled) {
+            if (getWindowToken() != null) {
+                registerLifecycle();
             }
+        } else {
+            unregisterLifecycle();
+        }
+    }
 
-            // Always update state with the latest valid Fragment page position
-            mFragmentContainer.setPosition(position);
+    // *********************************************************************************************
+    private void registerLifecycle() {
+        if (!mIsAutoVisibilityEnabled || (mParentPager != null) || (mPagerLifecycle != null)) {
+            return;
         }
 
-        // *****************************************************************************************
-        public void updateCurrentFragmentState(boolean isFragmentVisible) {
+        FragmentActivity activity = getFragmentActivity();
+        if (activity == null) {
+            Logger.w(TAG, "Automatic visibility requires a FragmentActivity.");
+            return;
+        }
+        mPagerLifecycle = PagerLifecycleFragment.obtain(activity);
+        mPagerLifecycle.addPager(this);
+        mIsHostResumed = mPagerLifecycle.isResumed();
+        updateAutoVisibility();
+    }
 
-            // -------------------------------------------------------------------------------------
-            // Try to retrieve currently active Fragment page if not already done from before. Might
-            // happen when updateCurrentFragmentState() is called with newly initialized
-            // InternalOnPageChangeListener.
-            // -------------------------------------------------------------------------------------
+    // *********************************************************************************************
+    private void unregisterLifecycle() {
+        if (mPagerLifecycle == null) return;
 
-            if (mFragmentContainer.getFragment() == null) {
-                Fragment currentFragment = getFragment(mFragmentContainer.getPosition());
-                mFragmentContainer.setFragment(currentFragment);
-            }
+        mPagerLifecycle.removePager(this);
+        mPagerLifecycle = null;
+        mIsHostResumed = false;
+        if (mIsPagerVisible) {
+            notifyPagerInvisible();
+        }
+    }
 
-            // -------------------------------------------------------------------------------------
-            // Notify currently active Fragment page about its state.
-            // -------------------------------------------------------------------------------------
+    /**
+     * Called by the {@link PagerLifecycleFragment} this {@code FragmentViewPager} is registered
+     * with once its {@code Activity} is resumed or paused.
+     */
+    void onHostResumedChanged(boolean isResumed) {
+        mIsHostResumed = isResumed;
+        updateAutoVisibility();
+    }
 
-            if (isFragmentVisible) {
-                notifyFragmentVisible();
+    /**
+     * Notifies this {@code FragmentViewPager} about its visibility, if it changed, while automatic
+     * visibility is enabled.
+     */
+    private void updateAutoVisibility() {
+        if (mPagerLifecycle == null) return;
+
+        final boolean isVisible = (mIsHostResumed && (getWindowVisibility() == VISIBLE)
+            && isShown());
+        if (isVisible != mIsPagerVisible) {
+            if (isVisible) {
+                notifyPagerVisible();
             } else {
-                notifyFragmentInvisible();
+                notifyPagerInvisible();
             }
         }
+    }
 
-        // *****************************************************************************************
-        private Fragment getFragment(int position) {
-            try {
-                Fragment fragment = null;
-                if (getAdapter() instanceof FragmentPagerAdapter) {
-                    FragmentPagerAdapter adapter = (FragmentPagerAdapter) getAdapter();
-                    fragment = adapter.getFragment(position);
-                } else if (getAdapter() instanceof FragmentStatePagerAdapter) {
-                    FragmentStatePagerAdapter adapter = (FragmentStatePagerAdapter) getAdapter();
-                    fragment = adapter.getFragment(position);
+    /** @hide */
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateAutoVisibility();
+    }
+
+    /** @hide */
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateAutoVisibility();
+    }
+
+    // *********************************************************************************************
+    private FragmentActivity getFragmentActivity() {
+        Context context = getContext();
+        while (context instanceof ContextWrapper) {
+            if (context instanceof FragmentActivity) return (FragmentActivity) context;
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code True} if setting the adapter is deferred until this {@code FragmentViewPager}
+     * becomes visible, else {@code false}.
+     * @see #setDeferredPopulationEnabled(boolean)
+     */
+    public boolean isDeferredPopulationEnabled() {
+        return mIsDeferredPopulationEnabled;
+    }
+
+    /**
+     * Enables/Disables deferred population. While enabled, an adapter set on this
+     * {@code FragmentViewPager} before it ever became visible is only set, i.e. its pages are only
+     * instantiated, once {@link #notifyPagerVisible()} or {@link #prefetchPages()} is called.
+     * Meanwhile, {@link #getAdapter()} returns the deferred adapter and the current item is
+     * recorded for later. <p />
+     *
+     * Mainly meant for {@code FragmentViewPager}s nested inside the pages of another
+     * {@code FragmentViewPager}, so that pages which are only preloaded offscreen do not populate
+     * their nested pages until the user reaches them. Must be called before the adapter is set.
+     *
+     * @param enabled Whether to enable or disable deferred population.
+     */
+    public void setDeferredPopulationEnabled(boolean enabled) {
+        mIsDeferredPopulationEnabled = enabled;
+        if (!enabled) {
+            populateDeferred();
+        }
+    }
+
+    /**
+     * Sets the deferred adapter right away, e.g. because the user is about to reach the page
+     * hosting this {@code FragmentViewPager}. Does nothing if no adapter is deferred.
+     *
+     * @see #setDeferredPopulationEnabled(boolean)
+     */
+    public void prefetchPages() {
+        populateDeferred();
+    }
+
+    // *********************************************************************************************
+    private void populateDeferred() {
+        if (mDeferredAdapter == null) return;
+
+        PagerAdapter adapter = mDeferredAdapter;
+        final int currentItem = mDeferredCurrentItem;
+        mDeferredAdapter = null;
+        mDeferredCurrentItem = -1;
+        applyAdapter(adapter);
+        if (currentItem >= 0) {
+            super.setCurrentItem(currentItem, false);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCurrentItem(int item) {
+        if (mDeferredAdapter != null) {
+            mDeferredCurrentItem = item;
+        } else if (!jumpTo(item)) {
+            super.setCurrentItem(item);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCurrentItem(int item, boolean smoothScroll) {
+        if (mDeferredAdapter != null) {
+            mDeferredCurrentItem = item;
+        } else if (!smoothScroll || !jumpTo(item)) {
+            super.setCurrentItem(item, smoothScroll);
+        }
+    }
+
+    /**
+     * Moves to the specified far item without populating the pages in between, if jump mode is
+     * enabled, by snapping to it directly. The pager populates the destination and its offscreen
+     * pages only, as snapping to a neighbour of the destination would also populate the pages
+     * around that neighbour.
+     *
+     * @return {@code True} if jumped, else {@code false}.
+     */
+    private boolean jumpTo(int item) {
+        PagerAdapter adapter = getAdapter();
+        if (!mIsJumpModeEnabled || (adapter == null) || (adapter.getCount() == 0)) return false;
+
+        item = Math.max(0, Math.min(item, adapter.getCount() - 1));
+        final int distance = item - getCurrentItem();
+        if (Math.abs(distance) <= getOffscreenPageLimit() + 1) return false;
+
+        Logger.d(TAG, "Jumping from page " + getCurrentItem() + " to page " + item + ".");
+        super.setCurrentItem(item, false);
+        return true;
+    }
+
+    /**
+     * @return {@code True} if long smooth scrolls skip the intermediate pages, else {@code false}.
+     * @see #setJumpModeEnabled(boolean)
+     */
+    public boolean isJumpModeEnabled() {
+        return mIsJumpModeEnabled;
+    }
+
+    /**
+     * Enables/Disables jump mode. While enabled, a smooth {@link #setCurrentItem(int, boolean)}
+     * (e.g. a tap on a tab) to a page beyond the offscreen pages snaps to the destination
+     * without animating the scroll. Thus, only the destination and its offscreen pages are
+     * instantiated, regardless of the distance, and none of the pages in between is instantiated
+     * or notified about its visibility.
+     *
+     * @param enabled Whether to enable or disable jump mode.
+     */
+    public void setJumpModeEnabled(boolean enabled) {
+        mIsJumpModeEnabled = enabled;
+    }
+
+    /**
+     * @return {@code True} if pages are prefetched ahead of drags, else {@code false}.
+     * @see #setPrefetchEnabled(boolean)
+     */
+    public boolean isPrefetchEnabled() {
+        return (mPagePrefetcher != null);
+    }
+
+    /**
+     * Enables/Disables prefetching of pages ahead of drags. While enabled, the page right beyond
+     * the offscreen page limit in the direction of a drag is instantiated during idle time, once
+     * the drag is fast or far enough, instead of at the moment the drag crosses a page boundary.
+     * The prefetched page is destroyed again if the drag reverses or settles elsewhere. <p />
+     *
+     * Only supported by {@link FragmentPagerAdapter} and {@link FragmentStatePagerAdapter}.
+     *
+     * @param enabled Whether to enable or disable prefetching.
+     */
+    public void setPrefetchEnabled(boolean enabled) {
+        if (enabled && (mPagePrefetcher == null)) {
+            mPagePrefetcher = new PagePrefetcher();
+            addOnPageChangeListener(mPagePrefetcher);
+        } else if (!enabled && (mPagePrefetcher != null)) {
+            mPagePrefetcher.cancel();
+            removeOnPageChangeListener(mPagePrefetcher);
+            mPagePrefetcher = null;
+        }
+    }
+
+    /**
+     * @return {@code True} if only the current page is created before the first frame is drawn,
+     * else {@code false}.
+     * @see #setFastStartupEnabled(boolean)
+     */
+    public boolean isFastStartupEnabled() {
+        return (mStartupReleaser != null);
+    }
+
+    /**
+     * Enables/Disables fast startup. While enabled, only the current page is created before this
+     * {@code FragmentViewPager} draws its first frame, and its offscreen pages are created once
+     * the main thread becomes idle after that frame. Must be called before the first frame is
+     * drawn, usually before the adapter is set. <p />
+     *
+     * Only supported by {@link FragmentPagerAdapter} and {@link FragmentStatePagerAdapter}, see
+     * {@link FragmentStatePagerAdapter#setOffscreenPagesHeld(boolean)}.
+     *
+     * @param enabled Whether to enable or disable fast startup.
+     */
+    public void setFastStartupEnabled(boolean enabled) {
+        if (enabled && (mStartupReleaser == null)) {
+            mStartupReleaser = new StartupReleaser();
+            getViewTreeObserver().addOnPreDrawListener(mStartupReleaser);
+            setOffscreenPagesHeld(true);
+        } else if (!enabled && (mStartupReleaser != null)) {
+            if (mStartupReleaser.isPending()) {
+                mStartupReleaser.cancel();
+                setOffscreenPagesHeld(false);
+            }
+            mStartupReleaser = null;
+        }
+    }
+
+    /**
+     * @return The {@code Fragment} page at the specified position, or {@code null} if it is not
+     * instantiated or the adapter does not support {@code Fragment} pages.
+     */
+    private Fragment getFragment(int position) {
+        Fragment fragment = null;
+        if (mFragmentPagerAdapter != null) {
+            if ((position >= 0) && (position < mFragmentPagerAdapter.getCount())) {
+                fragment = mFragmentPagerAdapter.getFragment(position);
+            }
+        } else if (mFragmentStatePagerAdapter != null) {
+            if ((position >= 0) && (position < mFragmentStatePagerAdapter.getCount())) {
+                fragment = mFragmentStatePagerAdapter.getFragment(position);
+            }
+        }
+
+        // Pages not implementing FragmentVisibilityListener are still tracked, as they might host
+        // nested FragmentViewPagers
+        return fragment;
+    }
+
+    /**
+     * Returns the transaction batch of the outermost {@code FragmentViewPager} this one is nested
+     * in, or its own batch if it is not nested.
+     */
+    private FragmentTransactionBatch getTransactionBatch() {
+        return getRootPager().mTransactionBatch;
+    }
+
+    /**
+     * Returns the outermost {@code FragmentViewPager} this one is nested in, or this one if it is
+     * not nested.
+     */
+    private FragmentViewPager getRootPager() {
+        FragmentViewPager root = this;
+        while (root.mParentPager != null) {
+            root = root.mParentPager;
+        }
+        return root;
+    }
+
+    /**
+     * Opens the transaction batch for the pages that are populated right after a scroll has
+     * settled, which {@code ViewPager} does after notifying the idle scroll state. The batch is
+     * closed and executed by the next measure pass of the outermost {@code FragmentViewPager}, or
+     * on the next animation frame if no measure pass happens by then.
+     */
+    private void openSettleBatch() {
+        if (getWindowToken() == null) return;
+
+        FragmentViewPager root = getRootPager();
+        if (root.mIsSettleBatchOpen) return;
+
+        root.mIsSettleBatchOpen = true;
+        root.mTransactionBatch.begin();
+        root.removeCallbacks(root.mTransactionBatchExecutor);
+        ViewCompat.postOnAnimation(root, root.mTransactionBatchExecutor);
+    }
+
+    /**
+     * Closes the transaction batch of this outermost {@code FragmentViewPager} if it was opened by
+     * {@link #openSettleBatch()}, without executing it.
+     */
+    private void closeSettleBatch() {
+        if (!mIsSettleBatchOpen) return;
+
+        mIsSettleBatchOpen = false;
+        mTransactionBatch.end();
+    }
+
+    // *********************************************************************************************
+    private void setTransactionBatch(FragmentTransactionBatch batch) {
+        if (mFragmentPagerAdapter != null) {
+            mFragmentPagerAdapter.setTransactionBatch(batch);
+        } else if (mFragmentStatePagerAdapter != null) {
+            mFragmentStatePagerAdapter.setTransactionBatch(batch);
+        }
+    }
+
+    // *********************************************************************************************
+    private void setPageInflater(PageInflater inflater) {
+        if (mFragmentPagerAdapter != null) {
+            mFragmentPagerAdapter.setPageInflater(inflater);
+        } else if (mFragmentStatePagerAdapter != null) {
+            mFragmentStatePagerAdapter.setPageInflater(inflater);
+        }
+    }
+
+    // *********************************************************************************************
+    private void setOffscreenPagesHeld(boolean held) {
+        if (mFragmentPagerAdapter != null) {
+            mFragmentPagerAdapter.setOffscreenPagesHeld(held);
+        } else if (mFragmentStatePagerAdapter != null) {
+            mFragmentStatePagerAdapter.setOffscreenPagesHeld(held);
+        }
+    }
+
+    /** @hide */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // Register with the nearest enclosing FragmentViewPager and the page hosting this one
+        View page = this;
+        ViewParent parent = getParent();
+        while (parent instanceof View) {
+            if (parent instanceof FragmentViewPager) {
+                mParentPager = (FragmentViewPager) parent;
+                mHostPage = page;
+                mParentPager.addChildPager(this);
+                break;
+            }
+            page = (View) parent;
+            parent = parent.getParent();
+        }
+        setTransactionBatch(getTransactionBatch());
+        registerLifecycle();
+    }
+
+    /** @hide */
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mPagePrefetcher != null) {
+            mPagePrefetcher.cancel();
+        }
+        removeCallbacks(mTransactionBatchExecutor);
+        closeSettleBatch();
+        getTransactionBatch().execute();
+        if (mParentPager != null) {
+            mParentPager.mChildPagers.remove(this);
+            mParentPager = null;
+            mHostPage = null;
+            setTransactionBatch(mTransactionBatch);
+        }
+        if (mFragmentStatePagerAdapter != null) {
+            mFragmentStatePagerAdapter.releaseSpilledStates();
+        }
+        unregisterLifecycle();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Registers the specified nested {@code FragmentViewPager} and notifies it right away if its
+     * hosting page is already visible.
+     */
+    private void addChildPager(FragmentViewPager child) {
+        mChildPagers.add(child);
+        if ((mInternalOnPageChangeListener != null)
+            && mInternalOnPageChangeListener.isPageVisible(child.mHostPage)) {
+            child.notifyPagerVisible();
+        }
+    }
+
+    /**
+     * Notifies the {@code FragmentViewPager}s nested inside the specified page about its
+     * visibility.
+     */
+    private void dispatchPageVisibility(View page, boolean isVisible) {
+        if (page == null) return;
+
+        for (int i=0; i<mChildPagers.size(); i++) {
+            FragmentViewPager child = mChildPagers.get(i);
+            if (child.mHostPage != page) continue;
+
+            if (isVisible) {
+                child.notifyPagerVisible();
+            } else {
+                child.notifyPagerInvisible();
+            }
+        }
+    }
+
+    /** @hide */
+    @Override
+    public void removeView(View view) {
+        super.removeView(view);
+
+        // The FragmentManager removes the views of destroyed pages after their onDestroyView()
+        if (mPageViewPool != null) {
+            mPageViewPool.put(view);
+        }
+    }
+
+    /**
+     * {@inheritDoc} <p />
+     *
+     * The transactions committed by the adapters of this {@code FragmentViewPager} and of all
+     * {@code FragmentViewPager}s nested inside it while measuring are collected in the batch of the
+     * outermost one, and executed at once at the end of its measure pass. The outermost
+     * {@code FragmentViewPager} then measures again, so that the views of the created pages are
+     * measured before they are laid out, and the nested {@code FragmentViewPager}s inside them
+     * populate into the next batch.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final FragmentViewPager root = getRootPager();
+        final FragmentTransactionBatch batch = root.mTransactionBatch;
+        if (root == this) {
+            // The pages populated after a scroll has settled are executed along with this pass
+            removeCallbacks(mTransactionBatchExecutor);
+            closeSettleBatch();
+        }
+
+        int passes = 0;
+        do {
+            batch.begin();
+            try {
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            } finally {
+                batch.end();
+            }
+            // Only the outermost measure pass executes the batched transactions
+        } while (!batch.isOpen() && batch.execute() && (++passes < MAX_BATCHED_MEASURE_PASSES));
+
+        if (!batch.isOpen() && batch.hasPendingTransactions()) {
+            removeCallbacks(mTransactionBatchExecutor);
+            post(mTransactionBatchExecutor);
+        }
+    }
+
+    /** @hide */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return ((mIsPagingEnabled) ? super.onTouchEvent(event) : false);
+    }
+
+    /** @hide */
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event) {
+        return ((mIsPagingEnabled) ? super.onInterceptTouchEvent(event) : false);
+    }
+
+    /**
+     * @return {@code True} if this {@code FragmentViewPager}'s paging capabilities (i.e. user swipe
+     * events will cause a page change) are enabled, else {@code false}.
+     */
+    public boolean isPagingEnabled() {
+        return mIsPagingEnabled;
+    }
+
+    /**
+     * Enables/Disables this {@code FragmentViewPager}'s paging capabilities (i.e. user swipe events
+     * will cause a page change).
+     *
+     * @param enabled Whether to enable or disable this {@code FragmentViewPager}'s paging capabilities.
+     */
+    public void setPagingEnabled(boolean enabled) {
+        mIsPagingEnabled = enabled;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * A {@code ViewPager.SimpleOnPageChangeListener} that is responsible for notifying
+     * {@code Fragment} pages about their visibility state. Its scroll callback runs on every frame
+     * of a scroll, thus it performs no allocations.
+     */
+    private class InternalOnPageChangeListener extends ViewPager.SimpleOnPageChangeListener
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        /**
+         * Contains the the state of the currently active {@code Fragment} page.
+         */
+        private FragmentContainer mFragmentContainer;
+
+        /**
+         * The current scroll state of the pager.
+         */
+        private int mScrollState = SCROLL_STATE_IDLE;
+
+        /**
+         * Indicates whether the visible callback of the currently active {@code Fragment} page is
+         * held back by the visibility dispatch policy.
+         */
+        private boolean mIsVisiblePending;
+
+        /**
+         * Dispatches the held back visible callback once the minimum dwell time elapsed.
+         */
+        private final Runnable mDwellRunnable = new Runnable() {
+            @Override
+            public void run() {
+                dispatchPendingVisible();
+            }
+        };
+
+        /**
+         * Dispatches the held back visible callback once a full frame was drawn.
+         */
+        private final DrawDispatcher mDrawDispatcher = new DrawDispatcher();
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        public InternalOnPageChangeListener() {
+            mFragmentContainer = new FragmentContainer();
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+            // Return if page position has not changed or animating between pages
+            if ((position == mFragmentContainer.getPosition()) || (positionOffset != 0)) return;
+
+            // Notify Fragment pages if this {@code FragmentViewPager} is visible
+            if (mIsPagerVisible) {
+                // The previously selected Fragment page is left before it was notified
+                cancelPendingVisible();
+
+                // Try to notify previously visible Fragment page that is no longer visible
+                Fragment currentFragment = mFragmentContainer.getFragment();
+                if (currentFragment != null) {
+                    notifyFragmentInvisible();
+                }
+
+                // Try to notify newly selected Fragment page that it is visible
+                Fragment selectedFragment = getFragment(position);
+                if (selectedFragment != null) {
+                    // Update state with the newly selected Fragment page
+                    mFragmentContainer.setFragment(selectedFragment);
+
+                    // The selected Fragment page might still wait for its deferred transaction
+                    if (!selectedFragment.isAdded()) {
+                        executePendingTransactions();
+                    }
+
+                    if (selectedFragment.isAdded()) {
+                        // Notify newly selected Fragment page only if it is still attached
+                        dispatchFragmentVisible();
+                    } else {
+                        // A constant message, since this runs on every settle of a scroll
+                        Logger.e(TAG, "Selected Fragment page not added.");
+                    }
                 }
-                return ((fragment instanceof FragmentVisibilityListener) ? fragment : null);
-            } catch (Exception ex) {
-                // Return to indicate that the Fragment page does comply with {@code FragmentViewPager}
-                // rules.
-                return null;
+            }
+
+            // Always update state with the latest valid Fragment page position
+            mFragmentContainer.setPosition(position);
+        }
+
+        /**
+         * Notifies the currently active {@code Fragment} page that it is no longer visible and
+         * forgets it, e.g. because the adapter is replaced.
+         */
+        public void reset() {
+            cancelPendingVisible();
+            notifyFragmentInvisible();
+            mFragmentContainer.setFragment(null);
+            mFragmentContainer.setPosition(-1);
+        }
+
+        /**
+         * Forgets the currently active {@code Fragment} page if a data set change removed or
+         * replaced it, and notifies the page that took its place once the pager is idle.
+         */
+        public void onDataSetChanged() {
+            Fragment currentFragment = mFragmentContainer.getFragment();
+            if ((currentFragment == null)
+                || (currentFragment == getFragment(mFragmentContainer.getPosition()))) return;
+
+            reset();
+            if (mScrollState == SCROLL_STATE_IDLE) {
+                onPageScrolled(FragmentViewPager.super.getCurrentItem(), 0, 0);
+            }
+        }
+
+        /**
+         * @return {@code True} if the specified view is the view of the currently active
+         * {@code Fragment} page and that page is visible, else {@code false}.
+         */
+        public boolean isPageVisible(View page) {
+            Fragment currentFragment = mFragmentContainer.getFragment();
+            return ((currentFragment != null) && mFragmentContainer.isVisible()
+                && (currentFragment.getView() == page));
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void onPageScrollStateChanged(int state) {
+            mScrollState = state;
+            if (state != SCROLL_STATE_IDLE) return;
+
+            // ViewPager populates the pages around the settled one right after this callback
+            openSettleBatch();
+            if (mVisibilityDispatchPolicy == DISPATCH_ON_SCROLL_IDLE) {
+                dispatchPendingVisible();
+            }
+        }
+
+        /**
+         * Notifies the newly selected {@code Fragment} page that it is visible, or holds the
+         * callback back according to the visibility dispatch policy.
+         */
+        private void dispatchFragmentVisible() {
+            switch (mVisibilityDispatchPolicy) {
+                case DISPATCH_ON_SCROLL_IDLE:
+                    if (mScrollState != SCROLL_STATE_IDLE) {
+                        mIsVisiblePending = true;
+                        return;
+                    }
+                    break;
+
+                case DISPATCH_AFTER_MIN_DWELL:
+                    mIsVisiblePending = true;
+                    postDelayed(mDwellRunnable, mMinDwellTime);
+                    return;
+            }
+            deliverFragmentVisible();
+        }
+
+        /**
+         * Notifies the currently active {@code Fragment} page that it is visible, right away or
+         * after the next frame.
+         */
+        private void deliverFragmentVisible() {
+            if (mIsDispatchVisibleAfterDraw) {
+                mIsVisiblePending = true;
+                mDrawDispatcher.schedule();
+            } else {
+                notifyFragmentVisible();
+            }
+        }
+
+        // *****************************************************************************************
+        private void dispatchPendingVisible() {
+            if (!mIsVisiblePending) return;
+
+            mIsVisiblePending = false;
+            if (isCurrentFragmentAdded()) {
+                deliverFragmentVisible();
+            }
+        }
+
+        /**
+         * Called once a full frame was drawn after the visible callback was held back for it.
+         */
+        public void onFrameDrawn() {
+            if (!mIsVisiblePending) return;
+
+            mIsVisiblePending = false;
+            if (isCurrentFragmentAdded()) {
+                notifyFragmentVisible();
+            }
+        }
+
+        // *****************************************************************************************
+        private boolean isCurrentFragmentAdded() {
+            Fragment currentFragment = mFragmentContainer.getFragment();
+            return (mIsPagerVisible && (currentFragment != null) && currentFragment.isAdded());
+        }
+
+        // *****************************************************************************************
+        private void cancelPendingVisible() {
+            if (mIsVisiblePending) {
+                mIsVisiblePending = false;
+                removeCallbacks(mDwellRunnable);
+                mDrawDispatcher.cancel();
+            }
+        }
+
+        // *****************************************************************************************
+        public void updateCurrentFragmentState(boolean isFragmentVisible) {
+            cancelPendingVisible();
+
+            // -------------------------------------------------------------------------------------
+            // Try to retrieve currently active Fragment page if not already done from before. Might
+            // happen when updateCurrentFragmentState() is called with newly initialized
+            // InternalOnPageChangeListener.
+            // -------------------------------------------------------------------------------------
+
+            if (mFragmentContainer.getFragment() == null) {
+                Fragment currentFragment = getFragment(mFragmentContainer.getPosition());
+                mFragmentContainer.setFragment(currentFragment);
+            }
+
+            // -------------------------------------------------------------------------------------
+            // Notify currently active Fragment page about its state.
+            // -------------------------------------------------------------------------------------
+
+            if (isFragmentVisible) {
+                notifyFragmentVisible();
+            } else {
+                notifyFragmentInvisible();
+            }
+        }
+
+        // *****************************************************************************************
+        private void executePendingTransactions() {
+            if (mFragmentPagerAdapter != null) {
+                mFragmentPagerAdapter.executePendingTransactions();
+            } else if (mFragmentStatePagerAdapter != null) {
+                mFragmentStatePagerAdapter.executePendingTransactions();
             }
         }
 
         // *****************************************************************************************
         private void notifyFragmentVisible() {
             Fragment currentFragment = mFragmentContainer.getFragment();
-            if ((currentFragment != null) && !mFragmentContainer.isVisible()) {
-                FragmentVisibilityListener listener = (FragmentVisibilityListener) currentFragment;
+            if ((currentFragment != null) && !mFragmentContainer.isVisible()
+                && currentFragment.isAdded()) {
                 mFragmentContainer.setVisible(true);
-                listener.onFragmentVisible();
+                if (currentFragment instanceof FragmentVisibilityListener) {
+                    ((FragmentVisibilityListener) currentFragment).onFragmentVisible();
+                }
+                dispatchPageVisibility(currentFragment.getView(), true);
             }
         }
 
@@ -362,15 +1465,337 @@ public class FragmentViewPager extends ViewPager
         private void notifyFragmentInvisible() {
             Fragment currentFragment = mFragmentContainer.getFragment();
             if ((currentFragment != null) && mFragmentContainer.isVisible()) {
-                FragmentVisibilityListener listener = (FragmentVisibilityListener) currentFragment;
                 mFragmentContainer.setVisible(false);
-                listener.onFragmentInvisible();
+                // A page that was already removed is not notified anymore
+                if (!currentFragment.isAdded()) return;
+
+                if (currentFragment instanceof FragmentVisibilityListener) {
+                    ((FragmentVisibilityListener) currentFragment).onFragmentInvisible();
+                }
+                dispatchPageVisibility(currentFragment.getView(), false);
+            }
+        }
+    }
+
+    /**
+     * A {@code ViewPager.SimpleOnPageChangeListener} that prefetches the page right beyond the
+     * offscreen page limit in the direction of a drag. The speed of the drag is derived from the
+     * scroll callbacks, as the {@code VelocityTracker} of {@code ViewPager} is private. Its scroll
+     * callback runs on every frame of a scroll, thus it performs no allocations.
+     */
+    private class PagePrefetcher extends ViewPager.SimpleOnPageChangeListener
+        implements MessageQueue.IdleHandler
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private int mScrollState = SCROLL_STATE_IDLE;
+
+        /**
+         * The scroll position, in pages, and the time of the previous scroll callback of the
+         * current drag, or {@code -1} if there was none yet.
+         */
+        private float mLastScrollPosition = -1;
+        private long  mLastScrollTime;
+
+        /**
+         * The position of the page that is prefetched or scheduled to be, or {@code -1}.
+         */
+        private int     mTargetPosition = -1;
+        private boolean mIsScheduled;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        @Override
+        public void onPageScrollStateChanged(int state) {
+            mScrollState = state;
+            if (state == SCROLL_STATE_DRAGGING) {
+                mLastScrollPosition = -1;
+            } else if (state == SCROLL_STATE_IDLE) {
+                // The pager adopted the prefetched page by now if it settled next to it
+                cancel();
+            }
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+            if (mScrollState != SCROLL_STATE_DRAGGING) return;
+
+            final float scrollPosition = position + positionOffset;
+            final long now = SystemClock.uptimeMillis();
+            final float lastScrollPosition = mLastScrollPosition;
+            final long elapsed = now - mLastScrollTime;
+            if ((lastScrollPosition >= 0) && (elapsed <= 0)) return;
+            mLastScrollPosition = scrollPosition;
+            mLastScrollTime = now;
+            if (lastScrollPosition < 0) return;
+
+            final int currentItem = getCurrentItem();
+            final float offset = scrollPosition - currentItem;
+            final float velocity = (scrollPosition - lastScrollPosition) * 1000 / elapsed;
+            if ((velocity * offset < 0) && (Math.abs(velocity) >= PREFETCH_MIN_VELOCITY)) {
+                // The drag reversed towards the current item
+                cancel();
+                return;
+            }
+            if ((Math.abs(offset) < PREFETCH_MIN_OFFSET)
+                && (Math.abs(velocity) < PREFETCH_MIN_VELOCITY)) return;
+
+            final int direction = (((offset != 0) ? offset : velocity) > 0) ? 1 : -1;
+            final int target = currentItem + direction * (getOffscreenPageLimit() + 1);
+            if ((target < 0) || (target >= getAdapter().getCount())) return;
+            if (target != mTargetPosition) {
+                cancel();
+                mTargetPosition = target;
+                mIsScheduled = true;
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+
+        // *****************************************************************************************
+        @Override
+        public boolean queueIdle() {
+            mIsScheduled = false;
+            if (mFragmentPagerAdapter != null) {
+                mFragmentPagerAdapter.prefetchItem(FragmentViewPager.this, mTargetPosition);
+            } else if (mFragmentStatePagerAdapter != null) {
+                mFragmentStatePagerAdapter.prefetchItem(FragmentViewPager.this, mTargetPosition);
+            }
+            return false;
+        }
+
+        /**
+         * Unschedules the pending prefetch and destroys the prefetched pages that were not adopted
+         * by the pager.
+         */
+        public void cancel() {
+            if (mTargetPosition < 0) return;
+
+            if (mIsScheduled) {
+                Looper.myQueue().removeIdleHandler(this);
+                mIsScheduled = false;
+            } else if (mFragmentPagerAdapter != null) {
+                mFragmentPagerAdapter.cancelPrefetch();
+            } else if (mFragmentStatePagerAdapter != null) {
+                mFragmentStatePagerAdapter.cancelPrefetch();
+            }
+            mTargetPosition = -1;
+        }
+    }
+
+    /**
+     * Releases the offscreen pages of the adapter once the main thread becomes idle after the
+     * first frame was drawn. The pre-draw callback runs right before the first frame, thus the
+     * release is posted from it, so that it is only considered once the frame was drawn.
+     */
+    private class StartupReleaser
+        implements ViewTreeObserver.OnPreDrawListener, Runnable, MessageQueue.IdleHandler
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private boolean mIsPending = true;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        /**
+         * @return {@code True} if the offscreen pages were not released yet, else {@code false}.
+         */
+        public boolean isPending() {
+            return mIsPending;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public boolean onPreDraw() {
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            post(this);
+            return true;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void run() {
+            Looper.myQueue().addIdleHandler(this);
+        }
+
+        // *****************************************************************************************
+        @Override
+        public boolean queueIdle() {
+            if (mIsPending) {
+                mIsPending = false;
+                Logger.d(TAG, "Releasing offscreen pages after the first frame.");
+                setOffscreenPagesHeld(false);
+            }
+            return false;
+        }
+
+        /**
+         * Stops waiting for the first frame without releasing the offscreen pages.
+         */
+        public void cancel() {
+            mIsPending = false;
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            removeCallbacks(this);
+            Looper.myQueue().removeIdleHandler(this);
+        }
+    }
+
+    /**
+     * A {@code ViewPager.SimpleOnPageChangeListener} that reports the visible fractions of the (at
+     * most two) pages shown while scrolling. Each page is tracked in one of two preallocated
+     * slots, thus its scroll callback performs no allocations.
+     */
+    private class VisibilityFractionTracker extends ViewPager.SimpleOnPageChangeListener
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private final FractionSlot mFirstSlot  = new FractionSlot();
+        private final FractionSlot mSecondSlot = new FractionSlot();
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        @Override
+        public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+            if (!mIsPagerVisible) return;
+
+            Fragment left = getFragment(position);
+            Fragment right = ((positionOffset > 0) ? getFragment(position + 1) : null);
+            final long now = SystemClock.uptimeMillis();
+
+            // Pages that scrolled out of view are no longer visible at all
+            release(mFirstSlot, left, right, now);
+            release(mSecondSlot, left, right, now);
+
+            update(left, 1 - positionOffset, now);
+            update(right, positionOffset, now);
+        }
+
+        // *****************************************************************************************
+        private void release(FractionSlot slot, Fragment left, Fragment right, long now) {
+            if ((slot.mFragment == null) || (slot.mFragment == left) || (slot.mFragment == right)) {
+                return;
+            }
+            report(slot, 0, now);
+            slot.mFragment = null;
+        }
+
+        // *****************************************************************************************
+        private void update(Fragment fragment, float fraction, long now) {
+            if (!(fragment instanceof FragmentVisibilityFractionListener) || !fragment.isAdded()) {
+                return;
+            }
+
+            FractionSlot slot = ((mFirstSlot.mFragment == fragment) ? mFirstSlot
+                : (mSecondSlot.mFragment == fragment) ? mSecondSlot
+                : (mFirstSlot.mFragment == null) ? mFirstSlot : mSecondSlot);
+            if (slot.mFragment != fragment) {
+                // The current item is fully visible before a scroll starts, any other is not
+                slot.mFragment = fragment;
+                slot.mFraction = ((fragment == getFragment(getCurrentItem())) ? 1 : 0);
+                slot.mReportTime = 0;
+            }
+            report(slot, fraction, now);
+        }
+
+        // *****************************************************************************************
+        private void report(FractionSlot slot, float fraction, long now) {
+            final float previous = slot.mFraction;
+            if (fraction == previous) return;
+
+            FragmentVisibilityFractionListener listener =
+                (FragmentVisibilityFractionListener) slot.mFragment;
+            slot.mFraction = fraction;
+            for (float threshold : mVisibilityFractionThresholds) {
+                final boolean isReached = (fraction >= threshold);
+                if (isReached != (previous >= threshold)) {
+                    listener.onFragmentVisibilityThresholdCrossed(threshold, isReached);
+                }
+            }
+
+            if ((fraction == 0) || (fraction == 1)
+                || (now - slot.mReportTime >= mVisibilityFractionInterval)) {
+                slot.mReportTime = now;
+                listener.onFragmentVisibilityFractionChanged(fraction);
+            }
+        }
+    }
+
+    /**
+     * The last known visible fraction of a page and the time it was last reported.
+     */
+    private static final class FractionSlot
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private Fragment mFragment;
+        private float    mFraction;
+        private long     mReportTime;
+    }
+
+    /**
+     * Dispatches the held back visible callback of the currently active {@code Fragment} page once
+     * a full frame was drawn. A frame is requested and the callback is posted from right before
+     * it is drawn, so that it runs once the frame was drawn.
+     */
+    private class DrawDispatcher implements ViewTreeObserver.OnPreDrawListener, Runnable
+    {
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        public void schedule() {
+            getViewTreeObserver().addOnPreDrawListener(this);
+            invalidate();
+        }
+
+        // *****************************************************************************************
+        public void cancel() {
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            removeCallbacks(this);
+        }
+
+        // *****************************************************************************************
+        @Override
+        public boolean onPreDraw() {
+            getViewTreeObserver().removeOnPreDrawListener(this);
+            post(this);
+            return true;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void run() {
+            if (mInternalOnPageChangeListener != null) {
+                mInternalOnPageChangeListener.onFrameDrawn();
             }
         }
     }
 
     /**
-     * A container for keeping the state of currently active {@code Fragment} page.
+     * A container for keeping the state of currently active {@code Fragment} page. The page is
+     * referenced strongly, as it is kept alive by the adapter anyway while it is active, and the
+     * reference is dropped once the page is replaced by a data set change or the adapter is
+     * replaced.
      */
     private class FragmentContainer
     {
@@ -378,9 +1803,9 @@ public class FragmentViewPager extends ViewPager
         // Fields
         // =========================================================================================
 
-        private WeakReference<Fragment> mFragmentReference;
-        private boolean                 mIsVisible;
-        private int                     mPosition;
+        private Fragment mFragment;
+        private boolean  mIsVisible;
+        private int      mPosition;
 
 
         // =========================================================================================
@@ -395,12 +1820,12 @@ public class FragmentViewPager extends ViewPager
 
         // *****************************************************************************************
         public Fragment getFragment() {
-            return ((mFragmentReference != null) ? mFragmentReference.get() : null);
+            return mFragment;
         }
 
         // *****************************************************************************************
         public void setFragment(Fragment fragment) {
-            mFragmentReference = new WeakReference<>(fragment);
+            mFragment = fragment;
         }
 
         // *****************************************************************************************
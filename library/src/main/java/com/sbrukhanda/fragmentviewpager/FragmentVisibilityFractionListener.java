@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+/**
+ * An extension of {@link FragmentVisibilityListener} for receiving the visible fraction of
+ * {@code Fragment}s inside {@link FragmentViewPager} while it is scrolled, see
+ * {@link FragmentViewPager#setVisibilityFractionEnabled(boolean)}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public interface FragmentVisibilityFractionListener extends FragmentVisibilityListener
+{
+    /**
+     * Called when the visible fraction of the {@code Fragment} changes, at most once per reporting
+     * interval, except that a fraction of {@code 0} or {@code 1} is always reported.
+     *
+     * @param fraction The visible fraction of the page, from {@code 0} to {@code 1}.
+     */
+    void onFragmentVisibilityFractionChanged(float fraction);
+
+    /**
+     * Called right away when the visible fraction of the {@code Fragment} reaches or drops below
+     * one of the thresholds of the pager.
+     *
+     * @param threshold The crossed threshold.
+     * @param isReached {@code True} if the visible fraction reached the threshold, or
+     * {@code false} if it dropped below it.
+     */
+    void onFragmentVisibilityThresholdCrossed(float threshold, boolean isReached);
+}
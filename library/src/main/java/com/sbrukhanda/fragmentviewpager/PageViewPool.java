@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+import android.support.v4.view.ViewCompat;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of the views of destroyed {@code Fragment} pages, kept by layout resource for reuse by
+ * the next page that inflates the same layout. <p />
+ *
+ * Pages opt in by inflating their views in {@code onCreateView()} through
+ * {@link #inflate(LayoutInflater, int, ViewGroup)}. Once such a page is destroyed, its view is
+ * parked in the pool of the {@link FragmentViewPager} it was removed from, see
+ * {@link FragmentViewPager#setPageViewPool(PageViewPool)}. A single pool may be shared by sibling
+ * and nested {@code FragmentViewPager}s, as long as they belong to the same {@code Activity}. <p />
+ *
+ * A reused view keeps the state its previous page left it in, thus pages must fully rebind it
+ * and must drop all references to it in {@code onDestroyView()}. Views hosting nested
+ * {@code Fragment}s must not be pooled.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public class PageViewPool
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    /**
+     * The default maximum number of pooled views per layout.
+     */
+    public static final int DEFAULT_MAX_VIEWS = 3;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final SparseArray<ArrayList<View>> mViews    = new SparseArray<ArrayList<View>>();
+    private final SparseIntArray               mMaxViews = new SparseIntArray();
+
+    /**
+     * The number of slots per layout that are reserved for views being inflated in the
+     * background, see {@link #reserve(int)}.
+     */
+    private final SparseIntArray mReservedViews = new SparseIntArray();
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    /**
+     * Inflates the specified layout for a page of the specified container, reusing a pooled view
+     * if the container is a {@link FragmentViewPager} with a {@code PageViewPool}.
+     *
+     * @param inflater The {@code LayoutInflater} passed to {@code onCreateView()}.
+     * @param layoutId The layout resource to inflate.
+     * @param container The container passed to {@code onCreateView()}.
+     * @return The inflated or reused view, not yet attached to the container.
+     */
+    public static View inflate(LayoutInflater inflater, int layoutId, ViewGroup container) {
+        PageViewPool pool = ((container instanceof FragmentViewPager)
+            ? ((FragmentViewPager) container).getPageViewPool() : null);
+        return ((pool != null)
+            ? pool.obtain(inflater, layoutId, container)
+            : inflater.inflate(layoutId, container, false));
+    }
+
+    /**
+     * Returns a pooled view of the specified layout, or inflates a new one if there is none.
+     *
+     * @param inflater The {@code LayoutInflater} to inflate with.
+     * @param layoutId The layout resource to inflate.
+     * @param container The container whose layout parameters to inflate with.
+     * @return The inflated or reused view, not yet attached to the container.
+     */
+    public View obtain(LayoutInflater inflater, int layoutId, ViewGroup container) {
+        ArrayList<View> views = mViews.get(layoutId);
+        if ((views != null) && !views.isEmpty()) {
+            return views.remove(views.size() - 1);
+        }
+
+        View view = inflater.inflate(layoutId, container, false);
+        view.setTag(R.id.fragmentviewpager_page_layout, layoutId);
+        return view;
+    }
+
+    /**
+     * Parks the specified view, if it was obtained from a {@code PageViewPool} and the pool of its
+     * layout is not full. Slots reserved for views being inflated in the background count as
+     * full.
+     *
+     * @param view The view of a destroyed page, which must be detached from its parent.
+     */
+    public void put(View view) {
+        Object layoutId = view.getTag(R.id.fragmentviewpager_page_layout);
+        if (!(layoutId instanceof Integer) || (view.getParent() != null)) return;
+
+        final int key = (Integer) layoutId;
+        ArrayList<View> views = mViews.get(key);
+        if (views == null) {
+            views = new ArrayList<View>();
+            mViews.put(key, views);
+        }
+        if ((views.size() + mReservedViews.get(key) < getMaxViews(key))
+            && !views.contains(view)) {
+            resetTransformation(view);
+            views.add(view);
+        }
+    }
+
+    /**
+     * Reserves a slot of the pool of the specified layout for a view that is about to be inflated
+     * in the background, so that the view is not dropped once it is offered.
+     *
+     * @return {@code True} if a slot was reserved, else {@code false} if the pool of the layout is
+     * full.
+     * @see #offer(View, int)
+     */
+    boolean reserve(int layoutId) {
+        ArrayList<View> views = mViews.get(layoutId);
+        final int reserved = mReservedViews.get(layoutId);
+        final int parked = ((views != null) ? views.size() : 0);
+        if (parked + reserved >= getMaxViews(layoutId)) return false;
+
+        mReservedViews.put(layoutId, reserved + 1);
+        return true;
+    }
+
+    /**
+     * Parks the specified newly inflated view of the specified layout in the slot reserved for it
+     * by {@link #reserve(int)}, e.g. a view inflated by {@link AsyncPageInflater}, or only releases
+     * the slot if the view is {@code null}.
+     */
+    void offer(View view, int layoutId) {
+        final int reserved = mReservedViews.get(layoutId);
+        if (reserved > 1) {
+            mReservedViews.put(layoutId, reserved - 1);
+        } else {
+            mReservedViews.delete(layoutId);
+        }
+        if (view == null) return;
+
+        view.setTag(R.id.fragmentviewpager_page_layout, layoutId);
+        ArrayList<View> views = mViews.get(layoutId);
+        if (views == null) {
+            views = new ArrayList<View>();
+            mViews.put(layoutId, views);
+        }
+        views.add(view);
+    }
+
+    /**
+     * Resets the properties that a {@code ViewPager.PageTransformer} might have changed.
+     */
+    private static void resetTransformation(View view) {
+        ViewCompat.setAlpha(view, 1f);
+        ViewCompat.setTranslationX(view, 0f);
+        ViewCompat.setTranslationY(view, 0f);
+        ViewCompat.setScaleX(view, 1f);
+        ViewCompat.setScaleY(view, 1f);
+        ViewCompat.setRotation(view, 0f);
+        ViewCompat.setRotationX(view, 0f);
+        ViewCompat.setRotationY(view, 0f);
+    }
+
+    /**
+     * @param layoutId The layout resource.
+     * @return The maximum number of pooled views of the specified layout.
+     */
+    public int getMaxViews(int layoutId) {
+        return mMaxViews.get(layoutId, DEFAULT_MAX_VIEWS);
+    }
+
+    /**
+     * Sets the maximum number of pooled views of the specified layout.
+     *
+     * @param layoutId The layout resource.
+     * @param max The maximum number of pooled views, or {@code 0} in order to pool none.
+     */
+    public void setMaxViews(int layoutId, int max) {
+        mMaxViews.put(layoutId, max);
+        ArrayList<View> views = mViews.get(layoutId);
+        while ((views != null) && (views.size() > max)) {
+            views.remove(0);
+        }
+    }
+
+    /**
+     * Drops all pooled views.
+     */
+    public void clear() {
+        mViews.clear();
+    }
+}
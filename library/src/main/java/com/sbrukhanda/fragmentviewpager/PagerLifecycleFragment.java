@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+
+/**
+ * A headless {@code Fragment} that reports the resumed state of its {@code Activity} to the
+ * {@link FragmentViewPager}s of that {@code Activity} with automatic visibility, see
+ * {@link FragmentViewPager#setAutoVisibilityEnabled(boolean)}. <p />
+ *
+ * <b>Note:</b> Public only so that the {@code FragmentManager} can recreate it, not meant to be
+ * used directly.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public class PagerLifecycleFragment extends Fragment
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String FRAGMENT_TAG = PagerLifecycleFragment.class.getName();
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    /**
+     * The instances by {@code Activity}, including those whose transactions are still pending.
+     */
+    private static final WeakHashMap<Activity, PagerLifecycleFragment> sInstances =
+        new WeakHashMap<Activity, PagerLifecycleFragment>();
+
+    private final ArrayList<FragmentViewPager> mPagers = new ArrayList<FragmentViewPager>();
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    public PagerLifecycleFragment() {
+        // Mandatory empty public constructor
+    }
+
+    /**
+     * Returns the instance of the specified {@code Activity}, adding one if there is none yet.
+     */
+    static PagerLifecycleFragment obtain(FragmentActivity activity) {
+        PagerLifecycleFragment fragment = sInstances.get(activity);
+        if (fragment == null) {
+            FragmentManager fm = activity.getSupportFragmentManager();
+            fragment = (PagerLifecycleFragment) fm.findFragmentByTag(FRAGMENT_TAG);
+            if (fragment == null) {
+                fragment = new PagerLifecycleFragment();
+                fm.beginTransaction().add(fragment, FRAGMENT_TAG).commitAllowingStateLoss();
+            }
+            sInstances.put(activity, fragment);
+        }
+        return fragment;
+    }
+
+    // *********************************************************************************************
+    void addPager(FragmentViewPager pager) {
+        if (!mPagers.contains(pager)) {
+            mPagers.add(pager);
+        }
+    }
+
+    // *********************************************************************************************
+    void removePager(FragmentViewPager pager) {
+        mPagers.remove(pager);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void onResume() {
+        super.onResume();
+        dispatchHostResumed(true);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void onPause() {
+        super.onPause();
+        dispatchHostResumed(false);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mPagers.clear();
+    }
+
+    // *********************************************************************************************
+    private void dispatchHostResumed(boolean isResumed) {
+        for (int i=mPagers.size()-1; i>=0; i--) {
+            mPagers.get(i).onHostResumedChanged(isResumed);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.view.ViewCompat;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Holds the add and attach operations of offscreen {@code Fragment} pages, in order to commit them
+ * after the current update of the pager instead of in the middle of it. <p />
+ *
+ * Operations are kept per {@code Fragment} until they are committed, so that a page which becomes
+ * the primary item can still be moved to the synchronous transaction of the adapter, and a page
+ * which is destroyed before its operation was committed never has to be created at all. <p />
+ *
+ * The views of the pages can be inflated in the background by a {@link PageInflater} before their
+ * add operations are committed. Such operations are held back until their views are ready, unless
+ * the pending operations are executed right away. Likewise, the add operations of pages whose
+ * saved states are loaded in the background are held back until their states are set, see
+ * {@link #setState(Fragment, Fragment.SavedState)}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class DeferredTransaction
+    implements Runnable, MessageQueue.IdleHandler, PageInflater.OnPageInflatedListener
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String  TAG   = DeferredTransaction.class.getSimpleName();
+    private static final boolean DEBUG = true;
+
+    /**
+     * The modes of committing the transactions of offscreen pages.
+     */
+    static final int COMMIT_IMMEDIATE     = 0;
+    static final int COMMIT_NEXT_FRAME    = 1;
+    static final int COMMIT_ON_IDLE       = 2;
+    static final int COMMIT_AFTER_INFLATE = 3;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final FragmentManager mFragmentManager;
+    private final ArrayList<Op>   mOps = new ArrayList<Op>();
+
+    /**
+     * The container of the pages whose operations are pending, used for posting the commit.
+     */
+    private ViewGroup mContainer;
+
+    /**
+     * The mode with which the commit is currently scheduled, or {@link #COMMIT_IMMEDIATE} if it is
+     * not scheduled.
+     */
+    private int mScheduledMode = COMMIT_IMMEDIATE;
+
+    /**
+     * Indicates whether the pending operations are held back from being scheduled.
+     */
+    private boolean mIsHeld;
+
+    /**
+     * The inflater of the views of pages in {@link #COMMIT_AFTER_INFLATE} mode, or {@code null}.
+     */
+    private PageInflater mPageInflater;
+
+    /**
+     * The source of the saved states that are still loading when their operations must be
+     * committed right away, or {@code null}.
+     */
+    private StateLoader mStateLoader;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    DeferredTransaction(FragmentManager fm) {
+        mFragmentManager = fm;
+    }
+
+    /**
+     * Defers adding the specified {@code Fragment} to the specified container. The specified saved
+     * state, if any, is the initial state that was set on the {@code Fragment}, which is handed
+     * back if the operation is cancelled.
+     */
+    void add(ViewGroup container, Fragment fragment, String tag, Fragment.SavedState state) {
+        mContainer = container;
+        mOps.add(new Op(fragment, container.getId(), tag, state));
+    }
+
+    /**
+     * Defers adding the specified {@code Fragment} to the specified container until its saved
+     * state, which is loaded in the background, is set through
+     * {@link #setState(Fragment, Fragment.SavedState)}.
+     */
+    void addLoadingState(ViewGroup container, Fragment fragment) {
+        mContainer = container;
+        Op op = new Op(fragment, container.getId(), null, null);
+        op.mIsLoadingState = true;
+        mOps.add(op);
+    }
+
+    /**
+     * Sets the loaded saved state of the specified {@code Fragment}, whose add operation can thus
+     * be committed with the next scheduled commit.
+     */
+    void setState(Fragment fragment, Fragment.SavedState state) {
+        int index = indexOf(fragment);
+        if (index >= 0) {
+            mOps.get(index).setState(state);
+        }
+    }
+
+    /**
+     * @return {@code True} if the add operation of the specified {@code Fragment} waits for its
+     * saved state, else {@code false}.
+     */
+    boolean isLoadingState(Fragment fragment) {
+        int index = indexOf(fragment);
+        return ((index >= 0) && mOps.get(index).mIsLoadingState);
+    }
+
+    /**
+     * Defers attaching the specified detached {@code Fragment}.
+     */
+    void attach(ViewGroup container, Fragment fragment) {
+        mContainer = container;
+        mOps.add(new Op(fragment, View.NO_ID, null, null));
+    }
+
+    // *********************************************************************************************
+    boolean isHeld() {
+        return mIsHeld;
+    }
+
+    /**
+     * Holds back the pending operations from being scheduled, or stops holding them back. Held
+     * operations are still committed by {@link #execute()}.
+     */
+    void setHeld(boolean held) {
+        mIsHeld = held;
+        if (held) {
+            unschedule();
+        }
+    }
+
+    // *********************************************************************************************
+    void setPageInflater(PageInflater inflater) {
+        mPageInflater = inflater;
+    }
+
+    // *********************************************************************************************
+    void setStateLoader(StateLoader loader) {
+        mStateLoader = loader;
+    }
+
+    // *********************************************************************************************
+    boolean isEmpty() {
+        return mOps.isEmpty();
+    }
+
+    /**
+     * @return {@code True} if an operation of the specified {@code Fragment} is pending, else
+     * {@code false}.
+     */
+    boolean isPending(Fragment fragment) {
+        return (indexOf(fragment) >= 0);
+    }
+
+    /**
+     * Returns the saved state with which the pending add operation of the specified
+     * {@code Fragment} initializes it, or {@code null} if there is none.
+     */
+    Fragment.SavedState getPendingState(Fragment fragment) {
+        int index = indexOf(fragment);
+        return ((index >= 0) ? mOps.get(index).mState : null);
+    }
+
+    /**
+     * Moves the pending operation of the specified {@code Fragment}, if any, to the specified
+     * transaction.
+     */
+    void moveTo(Fragment fragment, FragmentTransaction transaction) {
+        int index = indexOf(fragment);
+        if (index >= 0) {
+            Op op = mOps.remove(index);
+            awaitState(op);
+            op.applyTo(transaction);
+        }
+    }
+
+    /**
+     * Cancels the pending operation of the specified {@code Fragment}.
+     *
+     * @return The cancelled operation, or {@code null} if no operation was pending.
+     */
+    Op cancel(Fragment fragment) {
+        int index = indexOf(fragment);
+        if (index < 0) return null;
+
+        Op op = mOps.remove(index);
+        if (mOps.isEmpty()) {
+            unschedule();
+        }
+        return op;
+    }
+
+    /**
+     * Schedules the commit of the pending operations with the specified mode. Operations are
+     * committed right away in {@link #COMMIT_IMMEDIATE} mode, except for those waiting for their
+     * saved states. In {@link #COMMIT_AFTER_INFLATE} mode, the views of inflatable pages are
+     * inflated in the background and their operations are committed on the next animation frame
+     * after their views are ready, while all other operations are committed on the next animation
+     * frame.
+     */
+    void schedule(int mode) {
+        if (mOps.isEmpty() || mIsHeld) return;
+        if (mode == COMMIT_AFTER_INFLATE) {
+            inflatePages();
+            mode = COMMIT_NEXT_FRAME;
+        }
+        if (mode == mScheduledMode) return;
+
+        unschedule();
+        switch (mode) {
+            case COMMIT_NEXT_FRAME:
+                ViewCompat.postOnAnimation(mContainer, this);
+                mScheduledMode = mode;
+                break;
+
+            case COMMIT_ON_IDLE:
+                Looper.myQueue().addIdleHandler(this);
+                mScheduledMode = mode;
+                break;
+
+            default:
+                commit(false);
+                break;
+        }
+    }
+
+    // *********************************************************************************************
+    private void unschedule() {
+        switch (mScheduledMode) {
+            case COMMIT_NEXT_FRAME:
+                mContainer.removeCallbacks(this);
+                break;
+
+            case COMMIT_ON_IDLE:
+                Looper.myQueue().removeIdleHandler(this);
+                break;
+        }
+        mScheduledMode = COMMIT_IMMEDIATE;
+    }
+
+    /**
+     * Starts inflating the views of the pages of the pending add operations in the background, if
+     * a page inflater is set and supports them.
+     */
+    private void inflatePages() {
+        if (mPageInflater == null) return;
+
+        for (int i=0; i<mOps.size(); i++) {
+            Op op = mOps.get(i);
+            if (op.isAdd() && !op.mIsInflating && !op.mIsInflated
+                && mPageInflater.inflate(op.mFragment, mContainer, this)) {
+                op.mIsInflating = true;
+            }
+        }
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void onPageInflated(Fragment page) {
+        int index = indexOf(page);
+        if (index < 0) return;
+
+        Op op = mOps.get(index);
+        op.mIsInflating = false;
+        op.mIsInflated = true;
+        schedule(COMMIT_NEXT_FRAME);
+    }
+
+    /**
+     * Commits and executes all pending operations right away, waiting for the saved states that
+     * are still loading.
+     */
+    void execute() {
+        unschedule();
+        commit(true);
+    }
+
+    /**
+     * Commits and executes the pending operations, or only those not waiting for their views to
+     * be inflated or for their saved states.
+     */
+    private void commit(boolean all) {
+        FragmentTransaction transaction = null;
+        int count = 0;
+        for (int i=0; i<mOps.size(); ) {
+            Op op = mOps.get(i);
+            if (!all && (op.mIsInflating || op.mIsLoadingState)) {
+                i++;
+                continue;
+            }
+            if (transaction == null) {
+                transaction = mFragmentManager.beginTransaction();
+            }
+            mOps.remove(i);
+            awaitState(op);
+            op.applyTo(transaction);
+            count++;
+        }
+        if (transaction == null) return;
+        if (DEBUG) Log.v(TAG, "Committing " + count + " deferred operations");
+
+        try {
+            transaction.commitAllowingStateLoss();
+            mFragmentManager.executePendingTransactions();
+        } catch (IllegalStateException ex) {
+            // The host was destroyed before the pages could be committed, thus they are not needed
+            Log.w(TAG, "Dropping deferred operations", ex);
+        }
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void run() {
+        mScheduledMode = COMMIT_IMMEDIATE;
+        commit(false);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public boolean queueIdle() {
+        mScheduledMode = COMMIT_IMMEDIATE;
+        commit(false);
+        return false;
+    }
+
+    /**
+     * Sets the saved state of the specified operation, if it is still loading, waiting for the
+     * load to complete.
+     */
+    private void awaitState(Op op) {
+        if (op.mIsLoadingState) {
+            op.setState((mStateLoader != null) ? mStateLoader.awaitState(op.mFragment) : null);
+        }
+    }
+
+    // *********************************************************************************************
+    private int indexOf(Fragment fragment) {
+        for (int i=0; i<mOps.size(); i++) {
+            if (mOps.get(i).mFragment == fragment) return i;
+        }
+        return -1;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * The source of the saved states of pages that are loaded in the background.
+     */
+    interface StateLoader
+    {
+        /**
+         * Returns the saved state of the specified page, waiting for it to be loaded. Called on the
+         * main thread when the add operation of the page must be committed right away.
+         */
+        Fragment.SavedState awaitState(Fragment page);
+    }
+
+    /**
+     * A single pending add or attach operation.
+     */
+    static final class Op
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        final Fragment      mFragment;
+        final int           mContainerId;
+        final String        mTag;
+        Fragment.SavedState mState;
+
+        /**
+         * Indicate whether the view of the {@code Fragment} is being inflated in the background,
+         * or was inflated already.
+         */
+        boolean mIsInflating;
+        boolean mIsInflated;
+
+        /**
+         * Indicates whether the saved state of the {@code Fragment} is still being loaded.
+         */
+        boolean mIsLoadingState;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        Op(Fragment fragment, int containerId, String tag, Fragment.SavedState state) {
+            mFragment = fragment;
+            mContainerId = containerId;
+            mTag = tag;
+            mState = state;
+        }
+
+        /**
+         * @return {@code True} if this is an add operation, i.e. the {@code Fragment} is not known
+         * to the {@code FragmentManager} yet, else {@code false}.
+         */
+        boolean isAdd() {
+            return (mContainerId != View.NO_ID);
+        }
+
+        /**
+         * Sets the loaded saved state of the {@code Fragment}, which is no longer waited for.
+         */
+        void setState(Fragment.SavedState state) {
+            mState = state;
+            mIsLoadingState = false;
+            mFragment.setInitialSavedState(state);
+        }
+
+        // *****************************************************************************************
+        void applyTo(FragmentTransaction transaction) {
+            if (isAdd()) {
+                transaction.add(mContainerId, mFragment, mTag);
+            } else {
+                transaction.attach(mFragment);
+            }
+        }
+    }
+}
@@ -19,11 +19,16 @@ import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.SimpleArrayMap;
 import android.support.v4.view.PagerAdapter;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A modified copy of the {@link android.support.v4.app.FragmentPagerAdapter}, which retains its
  * original behaviour, but incorporates some additions and changes to its methods. <p />
@@ -32,12 +37,23 @@ import android.view.ViewGroup;
  * with a more appropriately named {@link #instantiateFragment(int)} method. <p />
  *
  * Secondly, method {@link #getFragment(int)} was added in order to allow access to the underlying
- * mechanism of stored {@code Fragment}s. <p />
+ * mechanism of stored {@code Fragment}s. Stored {@code Fragment}s are looked up in an index keyed
+ * by item identifier, which is built from their tags once and then kept in sync, instead of being
+ * searched by tag inside the {@code FragmentManager}. The number of {@code Fragment}s kept
+ * detached can be bounded, see {@link #setMaxDetachedFragments(int)}. <p />
  *
- * Lastly, method {@link #makeFragmentName(FragmentPagerAdapter, long)} was modified in order to
+ * Thirdly, method {@link #makeFragmentName(FragmentPagerAdapter, long)} was modified in order to
  * not interfere with the original {@link android.support.v4.app.FragmentPagerAdapter} and simplify
  * its parameters (mainly for being able to call it from {@link #getFragment(int)}). <p />
  *
+ * Lastly, adapters whose items have stable identifiers (see {@link #hasStableIds()}) have their
+ * data set changes resolved by those identifiers, so that only the pages whose items were actually
+ * inserted or removed are instantiated or destroyed. Changes of known item ranges can be applied
+ * in a single update through {@link #notifyItemRangeInserted(int, int)},
+ * {@link #notifyItemRangeRemoved(int, int)} and {@link #notifyItemRangeChanged(int, int)}. The
+ * transactions of offscreen pages can be committed after the primary page, see
+ * {@link #setCommitMode(int)}. <p />
+ *
  * <b>Note:</b> The Support-v4 v23.1.1 {@link android.support.v4.app.FragmentPagerAdapter}'s source
  * was used as a base.
  *
@@ -52,6 +68,19 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     private static final String  TAG   = FragmentPagerAdapter.class.getSimpleName();
     private static final boolean DEBUG = true;
 
+    /**
+     * Commit modes of the transactions of offscreen pages, see {@link #setCommitMode(int)}.
+     */
+    public static final int COMMIT_IMMEDIATE     = DeferredTransaction.COMMIT_IMMEDIATE;
+    public static final int COMMIT_NEXT_FRAME    = DeferredTransaction.COMMIT_NEXT_FRAME;
+    public static final int COMMIT_ON_IDLE       = DeferredTransaction.COMMIT_ON_IDLE;
+    public static final int COMMIT_AFTER_INFLATE = DeferredTransaction.COMMIT_AFTER_INFLATE;
+
+    /**
+     * The maximum number of detached {@code Fragment}s meaning that all of them are kept.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
 
     // =============================================================================================
     // Fields
@@ -61,6 +90,94 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     private FragmentTransaction   mCurTransaction     = null;
     private Fragment              mCurrentPrimaryItem = null;
 
+    /**
+     * The currently attached {@code Fragment}s, keyed by item identifier.
+     */
+    private final LongSparseArray<Fragment> mFragments = new LongSparseArray<Fragment>();
+
+    /**
+     * All {@code Fragment}s of this adapter that are known to the {@code FragmentManager}, i.e.
+     * attached and detached ones, keyed by the item identifiers of their tags, or {@code null} if
+     * not built yet.
+     *
+     * @see #getTaggedFragments()
+     */
+    private LongSparseArray<Fragment> mTaggedFragments = null;
+
+    /**
+     * The detached {@code Fragment}s, from the least to the most recently detached one.
+     *
+     * @see #setMaxDetachedFragments(int)
+     */
+    private final ArrayList<Fragment> mDetachedFragments    = new ArrayList<Fragment>();
+    private int                       mMaxDetachedFragments = UNBOUNDED;
+
+    /**
+     * The saved states of the pages whose {@code Fragment}s were removed in order to bound the
+     * detached ones, keyed by item identifier.
+     */
+    private final SavedStateStore mSavedState = new SavedStateStore();
+
+    /**
+     * The state returned by the last {@link #saveState()} call, along with the modification count
+     * of the saved states it reflects.
+     */
+    private PagerAdapterState mLastSavedState          = null;
+    private int               mLastSavedStatesModCount = -1;
+
+    private final ItemPositions mItemPositions = new ItemPositions(new ItemPositions.Source() {
+        @Override
+        public int getCount() {
+            return FragmentPagerAdapter.this.getCount();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return FragmentPagerAdapter.this.getItemId(position);
+        }
+    });
+
+    /**
+     * The new positions of the attached {@code Fragment}s while an item range change is being
+     * applied, else {@code null}.
+     */
+    private SimpleArrayMap<Fragment, Integer> mRangePositions = null;
+
+    /**
+     * The attached {@code Fragment}s whose items were removed or changed by an item range change
+     * and which are thus to be removed instead of detached.
+     */
+    private final ArrayList<Fragment> mInvalidatedFragments = new ArrayList<Fragment>();
+
+    /**
+     * Indicates whether the current transaction is kept open across updates, in order to commit
+     * all the changes caused by an item range change at once.
+     */
+    private boolean mBatchingUpdates = false;
+
+    /**
+     * The add and attach operations of offscreen pages that were not committed yet.
+     *
+     * @see #setCommitMode(int)
+     */
+    private final DeferredTransaction mDeferredTransaction;
+    private int                       mCommitMode = COMMIT_IMMEDIATE;
+
+    /**
+     * The batch of the pager tree this adapter is used by, if any.
+     *
+     * @see #setTransactionBatch(FragmentTransactionBatch)
+     */
+    private FragmentTransactionBatch mTransactionBatch;
+
+    /**
+     * The pages that were instantiated ahead of the pager and not adopted by it yet, keyed by item
+     * identifier.
+     *
+     * @see #prefetchItem(ViewGroup, int)
+     */
+    private final LongSparseArray<Fragment> mPrefetchedFragments = new LongSparseArray<Fragment>();
+
 
     // =============================================================================================
     // Constructors & Methods
@@ -69,6 +186,7 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     // *********************************************************************************************
     public FragmentPagerAdapter(FragmentManager fm) {
         mFragmentManager = fm;
+        mDeferredTransaction = new DeferredTransaction(fm);
     }
 
     // *********************************************************************************************
@@ -85,11 +203,175 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
      */
     public Fragment getFragment(int position) {
         long itemId = getItemId(position);
-        String name = makeFragmentName(this, itemId);
-        Fragment fragment = mFragmentManager.findFragmentByTag(name);
+        Fragment fragment = mFragments.get(itemId);
+        if (fragment != null) return fragment;
+
+        fragment = getTaggedFragments().get(itemId);
+
+        // Ignore Fragments whose tags went stale because their items were moved by a range change
+        if ((fragment != null) && (mFragments.indexOfValue(fragment) >= 0)) {
+            return null;
+        }
         return fragment;
     }
 
+    /**
+     * @return The maximum number of {@code Fragment}s that are kept detached.
+     * @see #setMaxDetachedFragments(int)
+     */
+    public int getMaxDetachedFragments() {
+        return mMaxDetachedFragments;
+    }
+
+    /**
+     * Sets the maximum number of {@code Fragment}s that are kept detached once their pages are
+     * destroyed, so that they can be reattached instantly. <p />
+     *
+     * The {@code Fragment}s of the least recently destroyed pages beyond this limit are removed
+     * from the {@code FragmentManager}, while their saved states are kept, so that their pages are
+     * rebuilt from these states once they are instantiated again. This bounds the memory held by
+     * long-lived pagers, at the cost of recreating the {@code Fragment}s of pages that were not
+     * visited recently. By default ({@link #UNBOUNDED}), all {@code Fragment}s are kept detached.
+     *
+     * @param max The maximum number of detached {@code Fragment}s, or {@link #UNBOUNDED}.
+     */
+    public void setMaxDetachedFragments(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Negative maximum: " + max);
+        }
+        mMaxDetachedFragments = max;
+        if (mDetachedFragments.size() > max) {
+            trimDetachedFragments();
+            commitTransactions();
+        }
+    }
+
+    /**
+     * @return The mode with which the transactions of offscreen pages are committed.
+     * @see #setCommitMode(int)
+     */
+    public int getCommitMode() {
+        return mCommitMode;
+    }
+
+    /**
+     * Sets the mode with which the transactions of offscreen pages are committed. <p />
+     *
+     * By default ({@link #COMMIT_IMMEDIATE}), all pages created by an update of the pager are
+     * committed and executed synchronously at its end, i.e. the views of all offscreen pages are
+     * inflated within the same frame as the primary page. With {@link #COMMIT_NEXT_FRAME} or
+     * {@link #COMMIT_ON_IDLE}, only the primary page is committed synchronously, while offscreen
+     * pages are committed on the next animation frame or once the main thread becomes idle,
+     * respectively. An offscreen page whose transaction is still pending is committed right away if
+     * it becomes the primary page, or dropped without ever being created if it is destroyed. <p />
+     *
+     * {@link #COMMIT_AFTER_INFLATE} additionally inflates the views of offscreen pages through the
+     * {@link PageInflater} set by the pager, e.g. those of
+     * {@link com.sbrukhanda.fragmentviewpager.AsyncInflatablePage}s, on a background thread and
+     * commits each of them on the next animation frame after its view is ready, see
+     * {@link com.sbrukhanda.fragmentviewpager.AsyncPageInflater}. Such a page that becomes the
+     * primary page before its view is ready is created synchronously. <p />
+     *
+     * Pages whose transactions are pending are returned by {@link #getFragment(int)} but are not
+     * added yet. Call {@link #executePendingTransactions()} to commit them right away.
+     *
+     * @param mode One of {@link #COMMIT_IMMEDIATE}, {@link #COMMIT_NEXT_FRAME},
+     * {@link #COMMIT_ON_IDLE} and {@link #COMMIT_AFTER_INFLATE}.
+     */
+    public void setCommitMode(int mode) {
+        mCommitMode = mode;
+        mDeferredTransaction.schedule(mode);
+    }
+
+    /**
+     * Commits and executes the pending transactions of offscreen pages right away.
+     *
+     * @see #setCommitMode(int)
+     */
+    public void executePendingTransactions() {
+        mDeferredTransaction.execute();
+    }
+
+    /**
+     * Holds back the transactions of offscreen pages regardless of the commit mode, e.g. in order
+     * to create only the primary page before the first frame is drawn. Pages that become the
+     * primary page are still committed synchronously. Once released, the held transactions are
+     * committed according to the commit mode.
+     *
+     * @param held Whether to hold or release the transactions of offscreen pages.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager#setFastStartupEnabled(boolean)
+     */
+    public void setOffscreenPagesHeld(boolean held) {
+        mDeferredTransaction.setHeld(held);
+        if (!held) {
+            mDeferredTransaction.schedule(mCommitMode);
+        }
+    }
+
+    /**
+     * Sets the batch in which the transactions committed while it is open are collected, instead of
+     * being executed right away.
+     *
+     * @param batch The batch of the pager tree this adapter is used by, or {@code null}.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager
+     */
+    public void setTransactionBatch(FragmentTransactionBatch batch) {
+        mTransactionBatch = batch;
+    }
+
+    /**
+     * Sets the inflater of the views of offscreen pages in {@link #COMMIT_AFTER_INFLATE} mode.
+     *
+     * @param inflater The inflater of the pager this adapter is used by, or {@code null}.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager
+     */
+    public void setPageInflater(PageInflater inflater) {
+        mDeferredTransaction.setPageInflater(inflater);
+    }
+
+    /**
+     * Instantiates the page at the specified position ahead of the pager, e.g. because the pager
+     * is being scrolled towards it, and commits it right away. The page is adopted once the pager
+     * instantiates it through {@link #instantiateItem(ViewGroup, int)}, else it is destroyed again
+     * by {@link #cancelPrefetch()}. Does nothing if the page is already instantiated.
+     *
+     * @param container The pager's view.
+     * @param position The position of the page to instantiate.
+     */
+    public void prefetchItem(ViewGroup container, int position) {
+        if ((position < 0) || (position >= getCount())
+            || (mFragments.get(getItemId(position)) != null)) return;
+
+        final long itemId = getItemId(position);
+        if (DEBUG) Log.v(TAG, "Prefetching item #" + itemId);
+        Fragment fragment = (Fragment) instantiateItem(container, position);
+        mPrefetchedFragments.put(itemId, fragment);
+        if (mDeferredTransaction.isPending(fragment)) {
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mDeferredTransaction.moveTo(fragment, mCurTransaction);
+        }
+        commitTransactions();
+    }
+
+    /**
+     * Destroys all pages instantiated by {@link #prefetchItem(ViewGroup, int)} that were not
+     * adopted by the pager yet.
+     */
+    public void cancelPrefetch() {
+        if (mPrefetchedFragments.size() == 0) return;
+
+        for (int i=0; i<mPrefetchedFragments.size(); i++) {
+            long itemId = mPrefetchedFragments.keyAt(i);
+            if (DEBUG) Log.v(TAG, "Cancelling prefetched item #" + itemId);
+            destroyItem(null, mItemPositions.getLastPosition(itemId),
+                mPrefetchedFragments.valueAt(i));
+        }
+        mPrefetchedFragments.clear();
+        commitTransactions();
+    }
+
     /**
      * Create the {@code Fragment} for the specified position.
      *
@@ -101,26 +383,52 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     // *********************************************************************************************
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
+        final long itemId = getItemId(position);
+
+        // Adopt the page if it was prefetched
+        Fragment prefetched = mPrefetchedFragments.get(itemId);
+        if (prefetched != null) {
+            mPrefetchedFragments.remove(itemId);
+            mItemPositions.put(itemId, position);
+            return prefetched;
         }
 
-        final long itemId = getItemId(position);
+        final boolean deferred = ((mCommitMode != COMMIT_IMMEDIATE)
+            || mDeferredTransaction.isHeld());
+        if ((mCurTransaction == null) && !deferred) {
+            mCurTransaction = mFragmentManager.beginTransaction();
+        }
 
         Fragment fragment = getFragment(position);
         if (fragment != null) {
             if (DEBUG) Log.v(TAG, "Attaching item #" + itemId + ": f=" + fragment);
-            mCurTransaction.attach(fragment);
+            mDetachedFragments.remove(fragment);
+            if (deferred) {
+                mDeferredTransaction.attach(container, fragment);
+            } else {
+                mCurTransaction.attach(fragment);
+            }
         } else {
             fragment = instantiateFragment(position);
             if (DEBUG) Log.v(TAG, "Adding item #" + itemId + ": f=" + fragment);
-            mCurTransaction.add(container.getId(), fragment,
-                makeFragmentName(this, itemId));
+            Fragment.SavedState fss = mSavedState.take(itemId);
+            if (fss != null) {
+                fragment.setInitialSavedState(fss);
+            }
+            if (deferred) {
+                mDeferredTransaction.add(container, fragment, makeFragmentName(this, itemId), fss);
+            } else {
+                mCurTransaction.add(container.getId(), fragment,
+                    makeFragmentName(this, itemId));
+            }
+            getTaggedFragments().put(itemId, fragment);
         }
         if (fragment != mCurrentPrimaryItem) {
             fragment.setMenuVisibility(false);
             fragment.setUserVisibleHint(false);
         }
+        mFragments.put(itemId, fragment);
+        mItemPositions.put(itemId, position);
 
         return fragment;
     }
@@ -131,9 +439,65 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
         if (mCurTransaction == null) {
             mCurTransaction = mFragmentManager.beginTransaction();
         }
-        if (DEBUG) Log.v(TAG, "Detaching item #" + getItemId(position) + ": f=" + object
-            + " v=" + ((Fragment)object).getView());
-        mCurTransaction.detach((Fragment)object);
+        Fragment fragment = (Fragment)object;
+        int index = mFragments.indexOfValue(fragment);
+        final long itemId = ((index >= 0) ? mFragments.keyAt(index) : getItemId(position));
+        mFragments.remove(itemId);
+        mItemPositions.remove(itemId);
+
+        final boolean invalidated = mInvalidatedFragments.remove(fragment);
+        final boolean removed = (hasStableIds()
+            && (mItemPositions.positionOf(itemId, position) == POSITION_NONE));
+        DeferredTransaction.Op pendingOp = mDeferredTransaction.cancel(fragment);
+        if ((pendingOp != null) && pendingOp.isAdd()) {
+            // The Fragment never reached the FragmentManager, thus there is nothing to destroy, but
+            // its initial state is still the saved state of its page
+            if (DEBUG) Log.v(TAG, "Dropping uncommitted item #" + itemId + ": f=" + object);
+            removeTaggedFragment(fragment);
+            if (!invalidated && !removed && (pendingOp.mState != null)) {
+                mSavedState.put(itemId, pendingOp.mState);
+            }
+            return;
+        }
+        if (removed) {
+            mSavedState.remove(itemId);
+        }
+
+        // The Fragment will never be needed again if its item was removed or changed, or if its tag
+        // went stale because its item was moved by a range change
+        if (invalidated || removed || (getTaggedFragments().get(itemId) != fragment)) {
+            if (DEBUG) Log.v(TAG, "Removing item #" + itemId + ": f=" + object
+                + " v=" + fragment.getView());
+            mCurTransaction.remove(fragment);
+            removeTaggedFragment(fragment);
+        } else {
+            if (DEBUG) Log.v(TAG, "Detaching item #" + itemId + ": f=" + object
+                + " v=" + fragment.getView());
+            mCurTransaction.detach(fragment);
+            mDetachedFragments.add(fragment);
+            trimDetachedFragments();
+        }
+    }
+
+    /**
+     * Removes the least recently detached {@code Fragment}s that exceed the maximum number of
+     * detached ones, keeping their saved states.
+     */
+    private void trimDetachedFragments() {
+        while (mDetachedFragments.size() > mMaxDetachedFragments) {
+            Fragment f = mDetachedFragments.remove(0);
+            int index = getTaggedFragments().indexOfValue(f);
+            if (index < 0) continue;
+
+            final long itemId = mTaggedFragments.keyAt(index);
+            if (DEBUG) Log.v(TAG, "Evicting item #" + itemId + ": f=" + f);
+            mSavedState.put(itemId, mFragmentManager.saveFragmentInstanceState(f));
+            mTaggedFragments.removeAt(index);
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mCurTransaction.remove(f);
+        }
     }
 
     // *********************************************************************************************
@@ -156,11 +520,34 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     // *********************************************************************************************
     @Override
     public void finishUpdate(ViewGroup container) {
+        if (mBatchingUpdates) return;
+
+        commitTransactions();
+    }
+
+    /**
+     * Commits and executes the current transaction, along with the pending operation of the
+     * primary page if any, and schedules the commit of the pending operations of offscreen pages.
+     * While the {@link FragmentTransactionBatch} is open, the transaction is executed along with
+     * the batch instead.
+     */
+    private void commitTransactions() {
+        if ((mCurrentPrimaryItem != null) && mDeferredTransaction.isPending(mCurrentPrimaryItem)) {
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mDeferredTransaction.moveTo(mCurrentPrimaryItem, mCurTransaction);
+        }
         if (mCurTransaction != null) {
             mCurTransaction.commitAllowingStateLoss();
             mCurTransaction = null;
-            mFragmentManager.executePendingTransactions();
+            if ((mTransactionBatch != null) && mTransactionBatch.isOpen()) {
+                mTransactionBatch.add(mFragmentManager);
+            } else {
+                mFragmentManager.executePendingTransactions();
+            }
         }
+        mDeferredTransaction.schedule(mCommitMode);
     }
 
     // *********************************************************************************************
@@ -172,13 +559,272 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
     // *********************************************************************************************
     @Override
     public Parcelable saveState() {
-        return null;
+        final int statesModCount = mSavedState.getModCount();
+        if (statesModCount != mLastSavedStatesModCount) {
+            mLastSavedState = ((mSavedState.size() > 0)
+                ? PagerAdapterState.create(mSavedState, new long[0], new int[0], false) : null);
+            mLastSavedStatesModCount = statesModCount;
+        }
+        return mLastSavedState;
     }
 
     // *********************************************************************************************
     @Override
     public void restoreState(Parcelable state, ClassLoader loader) {
-        // Nothing needed
+        mSavedState.clear();
+        mPrefetchedFragments.clear();
+        if (state instanceof PagerAdapterState) {
+            ((PagerAdapterState) state).restoreStates(mSavedState);
+        }
+
+        // Rebuild the index from the tags of the Fragments restored by the FragmentManager
+        mDeferredTransaction.execute();
+        mTaggedFragments = null;
+    }
+
+    /**
+     * Returns the index of this adapter's {@code Fragment}s, building it out of the tags of the
+     * {@code FragmentManager}'s active {@code Fragment}s if needed.
+     */
+    private LongSparseArray<Fragment> getTaggedFragments() {
+        if (mTaggedFragments != null) return mTaggedFragments;
+
+        mTaggedFragments = new LongSparseArray<Fragment>();
+        mDetachedFragments.clear();
+        List<Fragment> fragments = mFragmentManager.getFragments();
+        if (fragments == null) return mTaggedFragments;
+
+        final String prefix = makeFragmentNamePrefix(this);
+        for (int i=0; i<fragments.size(); i++) {
+            Fragment f = fragments.get(i);
+            String tag = ((f != null) ? f.getTag() : null);
+            if ((tag == null) || !tag.startsWith(prefix) || f.isRemoving()) continue;
+
+            long itemId;
+            try {
+                itemId = Long.parseLong(tag.substring(prefix.length()));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+
+            // Prefer added Fragments over detached ones, as findFragmentByTag() does
+            Fragment existing = mTaggedFragments.get(itemId);
+            if ((existing == null) || !existing.isAdded()) {
+                mTaggedFragments.put(itemId, f);
+            }
+            if (f.isDetached()) {
+                mDetachedFragments.add(f);
+            }
+        }
+        if (DEBUG) Log.v(TAG, "Indexed " + mTaggedFragments.size() + " fragments");
+        return mTaggedFragments;
+    }
+
+    // *********************************************************************************************
+    private void removeTaggedFragment(Fragment fragment) {
+        int index = getTaggedFragments().indexOfValue(fragment);
+        if (index >= 0) {
+            mTaggedFragments.removeAt(index);
+        }
+    }
+
+    /**
+     * Indicates whether each item's identifier returned by {@link #getItemId(int)} is unique and
+     * stays the same for as long as the item is part of the data set, regardless of its position.
+     * <p />
+     *
+     * When {@code true}, {@link #notifyDataSetChanged()} resolves the new position of each attached
+     * page by its item identifier. Thus, only pages whose items were removed are destroyed (and
+     * their {@code Fragment}s removed instead of detached), and only pages whose items were
+     * inserted are instantiated. The default implementation returns {@code false}, i.e. all pages
+     * keep their positions.
+     *
+     * @return {@code True} if this adapter's item identifiers are stable, else {@code false}.
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    // *********************************************************************************************
+    @Override
+    public int getItemPosition(Object object) {
+        if (mRangePositions != null) {
+            Integer position = mRangePositions.get(object);
+            if (position != null) return position;
+        }
+        if (!hasStableIds()) return super.getItemPosition(object);
+
+        int index = mFragments.indexOfValue((Fragment) object);
+        return ((index >= 0) ? mItemPositions.resolve(mFragments.keyAt(index)) : POSITION_NONE);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void notifyDataSetChanged() {
+        cancelPrefetch();
+        mItemPositions.invalidate();
+        if (hasStableIds()) {
+            dropRemovedSavedStates();
+        }
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Notifies that the specified range of items was inserted into the data set. Only the pages
+     * affected by the insertion are updated, and all resulting {@code Fragment} changes are
+     * committed in a single transaction. <p />
+     *
+     * If this adapter does not have stable identifiers, its item identifiers are assumed to be
+     * positions. Attached pages after the inserted range are re-keyed, while detached pages after
+     * it are removed, as their tags now belong to other items, and are rebuilt from their saved
+     * states once instantiated again.
+     *
+     * @param positionStart The position of the first inserted item.
+     * @param itemCount The number of inserted items.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_INSERTED, positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that the specified range of items was removed from the data set. The pages of the
+     * removed items are destroyed and their {@code Fragment}s removed, and all resulting
+     * {@code Fragment} changes are committed in a single transaction. <p />
+     *
+     * If this adapter does not have stable identifiers, its item identifiers are assumed to be
+     * positions. Attached pages after the removed range are re-keyed, while detached pages after
+     * it are removed, as their tags now belong to other items, and are rebuilt from their saved
+     * states once instantiated again.
+     *
+     * @param positionStart The former position of the first removed item.
+     * @param itemCount The number of removed items.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_REMOVED, positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that the content of the specified range of items has changed. The pages of the
+     * changed items are recreated, while all other pages are left untouched. All resulting
+     * {@code Fragment} changes are committed in a single transaction.
+     *
+     * @param positionStart The position of the first changed item.
+     * @param itemCount The number of changed items.
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_CHANGED, positionStart, itemCount);
+    }
+
+    // *********************************************************************************************
+    private void applyItemRangeChange(int type, int start, int count) {
+        if (count <= 0) return;
+        cancelPrefetch();
+
+        final boolean stableIds = hasStableIds();
+
+        // -----------------------------------------------------------------------------------------
+        // Resolve the new positions of the attached Fragments by their last known positions.
+        // -----------------------------------------------------------------------------------------
+
+        mRangePositions = new SimpleArrayMap<Fragment, Integer>(mFragments.size());
+        for (int i=mFragments.size()-1; i>=0; i--) {
+            long itemId = mFragments.keyAt(i);
+            int lastPosition = mItemPositions.getLastPosition(itemId);
+            if ((lastPosition < 0) && stableIds) continue;
+
+            Fragment f = mFragments.valueAt(i);
+            int position = ItemPositions.applyRange(type, start, count,
+                ((lastPosition >= 0) ? lastPosition : (int) itemId));
+            mRangePositions.put(f, position);
+            if (position == POSITION_NONE) {
+                mFragments.removeAt(i);
+                mInvalidatedFragments.add(f);
+            }
+        }
+
+        // -----------------------------------------------------------------------------------------
+        // Re-key the attached Fragments and drop the detached ones whose tags went stale, if item
+        // identifiers are positions.
+        // -----------------------------------------------------------------------------------------
+
+        if (!stableIds) {
+            switch (type) {
+                case ItemPositions.RANGE_INSERTED:
+                    removeDetachedFragments(start, Long.MAX_VALUE);
+                    mSavedState.shift(start, count);
+                    LongSparseArrays.shift(mFragments, start, count);
+                    break;
+
+                case ItemPositions.RANGE_REMOVED:
+                    removeDetachedFragments(start, Long.MAX_VALUE);
+                    mSavedState.removeRange(start, start + count);
+                    mSavedState.shift(start + count, -count);
+                    LongSparseArrays.shift(mFragments, start + count, -count);
+                    break;
+
+                default:
+                    removeDetachedFragments(start, start + count);
+                    mSavedState.removeRange(start, start + count);
+                    break;
+            }
+        }
+        mItemPositions.clear();
+        for (int i=0; i<mFragments.size(); i++) {
+            Integer position = mRangePositions.get(mFragments.valueAt(i));
+            if (position != null) {
+                mItemPositions.put(mFragments.keyAt(i), position);
+            }
+        }
+
+        // -----------------------------------------------------------------------------------------
+        // Let the pager apply the new positions and commit all resulting changes at once.
+        // -----------------------------------------------------------------------------------------
+
+        mBatchingUpdates = true;
+        try {
+            super.notifyDataSetChanged();
+        } finally {
+            mBatchingUpdates = false;
+            mRangePositions = null;
+        }
+        commitTransactions();
+    }
+
+    /**
+     * Removes the detached {@code Fragment}s of this adapter whose item identifiers are within
+     * {@code [start, end)}, keeping their saved states in order to be re-keyed along with the
+     * other saved states.
+     */
+    private void removeDetachedFragments(long start, long end) {
+        LongSparseArray<Fragment> fragments = getTaggedFragments();
+        for (int i=fragments.size()-1; (i>=0) && (fragments.keyAt(i) >= start); i--) {
+            Fragment f = fragments.valueAt(i);
+            if ((fragments.keyAt(i) >= end)
+                    || (mFragments.indexOfValue(f) >= 0) || mInvalidatedFragments.contains(f)) {
+                continue;
+            }
+
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            if (DEBUG) Log.v(TAG, "Removing stale item #" + fragments.keyAt(i) + ": f=" + f);
+            mSavedState.put(fragments.keyAt(i), mFragmentManager.saveFragmentInstanceState(f));
+            mCurTransaction.remove(f);
+            mDetachedFragments.remove(f);
+            fragments.removeAt(i);
+        }
+    }
+
+    /**
+     * Drops the saved states of the items that are no longer part of the data set.
+     */
+    private void dropRemovedSavedStates() {
+        for (int i=mSavedState.size()-1; i>=0; i--) {
+            long itemId = mSavedState.keyAt(i);
+            if (mItemPositions.positionOf(itemId, -1) == POSITION_NONE) {
+                mSavedState.remove(itemId);
+            }
+        }
     }
 
     /**
@@ -189,6 +835,7 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
      *
      * @param position Position within this adapter
      * @return Unique identifier for the item at position
+     * @see #hasStableIds()
      */
     public long getItemId(int position) {
         return position;
@@ -196,6 +843,11 @@ public abstract class FragmentPagerAdapter extends PagerAdapter
 
     // *********************************************************************************************
     private static String makeFragmentName(FragmentPagerAdapter adapter, long id) {
-        return "android:super-switcher:" + adapter.hashCode() + ":" + id;
+        return makeFragmentNamePrefix(adapter) + id;
+    }
+
+    // *********************************************************************************************
+    private static String makeFragmentNamePrefix(FragmentPagerAdapter adapter) {
+        return "android:super-switcher:" + adapter.hashCode() + ":";
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.util.SimpleArrayMap;
+
+import java.util.ArrayList;
+
+/**
+ * A per class pool of removed {@link RecyclablePage} {@code Fragment}s. <p />
+ *
+ * {@code Fragment}s are put into the pool as soon as their removal is committed, but are handed
+ * out only once the {@code FragmentManager} has actually removed and destroyed them, i.e. once
+ * they hold no host anymore and can thus be added again.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class FragmentPool
+{
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final SimpleArrayMap<Class<?>, ArrayList<Fragment>> mPools =
+        new SimpleArrayMap<Class<?>, ArrayList<Fragment>>();
+
+    /**
+     * The maximum number of pooled {@code Fragment}s per class.
+     */
+    private int mMaxSize = 0;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    // *********************************************************************************************
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        for (int i=0; i<mPools.size(); i++) {
+            ArrayList<Fragment> pool = mPools.valueAt(i);
+            while (pool.size() > maxSize) {
+                pool.remove(0);
+            }
+        }
+    }
+
+    /**
+     * Puts the specified removed {@code Fragment} into the pool of its class, if it is recyclable
+     * and the pool is not full.
+     */
+    void put(Fragment fragment) {
+        if ((mMaxSize == 0) || !(fragment instanceof RecyclablePage)) return;
+
+        ArrayList<Fragment> pool = mPools.get(fragment.getClass());
+        if (pool == null) {
+            pool = new ArrayList<Fragment>(mMaxSize);
+            mPools.put(fragment.getClass(), pool);
+        }
+        if ((pool.size() < mMaxSize) && !pool.contains(fragment)) {
+            pool.add(fragment);
+        }
+    }
+
+    /**
+     * Removes and returns a pooled {@code Fragment} of the specified class that can be added
+     * again, or {@code null} if there is none.
+     */
+    Fragment obtain(Class<?> fragmentClass) {
+        ArrayList<Fragment> pool = mPools.get(fragmentClass);
+        if (pool == null) return null;
+
+        for (int i=pool.size()-1; i>=0; i--) {
+            Fragment fragment = pool.get(i);
+            if (!fragment.isAdded() && !fragment.isRemoving() && (fragment.getActivity() == null)) {
+                pool.remove(i);
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    // *********************************************************************************************
+    void clear() {
+        mPools.clear();
+    }
+}
@@ -15,12 +15,17 @@
  */
 package com.sbrukhanda.fragmentviewpager.adapters;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentStateAccess;
 import android.support.v4.app.FragmentTransaction;
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.SimpleArrayMap;
 import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -37,6 +42,24 @@ import java.util.ArrayList;
  * Secondly, method {@link #getFragment(int)} was added in order to allow access to the underlying
  * mechanism of stored {@code Fragment}s. <p />
  *
+ * Lastly, {@code Fragment}s and their saved states are stored sparsely, keyed by
+ * {@link #getItemId(int)}, instead of in position-indexed lists padded with {@code null}s. Thus,
+ * memory usage and the cost of {@link #saveState()}/{@link #restoreState(Parcelable, ClassLoader)}
+ * grow with the number of pages actually visited, not with the highest visited position. The
+ * saved states of destroyed pages can additionally be bounded by a byte budget, see
+ * {@link #setSavedStateBudget(int)}, and states exceeding it can be spilled to disk, see
+ * {@link #enableSavedStateSpill(Context)}. This adapter's own state is saved as a compact
+ * {@link PagerAdapterState} rather than a string-keyed {@code Bundle}. <p />
+ *
+ * Finally, adapters whose items have stable identifiers (see {@link #hasStableIds()}) have their
+ * data set changes resolved by those identifiers, so that only the pages whose items were actually
+ * inserted or removed are instantiated or destroyed. Changes of known item ranges can be applied
+ * in a single update through {@link #notifyItemRangeInserted(int, int)},
+ * {@link #notifyItemRangeRemoved(int, int)} and {@link #notifyItemRangeChanged(int, int)}. The
+ * transactions of offscreen pages can be committed after the primary page, see
+ * {@link #setCommitMode(int)}, and removed {@code Fragment}s can be reused for other pages, see
+ * {@link #setFragmentPoolSize(int)}. <p />
+ *
  * <b>Note:</b> The Support-v4 v23.1.1 {@link android.support.v4.app.FragmentStatePagerAdapter}'s
  * source was used as a base.
  *
@@ -51,6 +74,16 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
     private static final String  TAG   = FragmentStatePagerAdapter.class.getSimpleName();
     private static final boolean DEBUG = true;
 
+    /**
+     * Commit modes of the transactions of offscreen pages, see {@link #setCommitMode(int)}.
+     */
+    public static final int COMMIT_IMMEDIATE     = DeferredTransaction.COMMIT_IMMEDIATE;
+    public static final int COMMIT_NEXT_FRAME    = DeferredTransaction.COMMIT_NEXT_FRAME;
+    public static final int COMMIT_ON_IDLE       = DeferredTransaction.COMMIT_ON_IDLE;
+    public static final int COMMIT_AFTER_INFLATE = DeferredTransaction.COMMIT_AFTER_INFLATE;
+
+    private static final String FRAGMENT_INDEX_KEY = "f";
+
 
     // =============================================================================================
     // Fields
@@ -59,9 +92,101 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
     private final FragmentManager mFragmentManager;
     private FragmentTransaction mCurTransaction = null;
 
-    private ArrayList<Fragment.SavedState> mSavedState         = new ArrayList<Fragment.SavedState>();
-    private ArrayList<Fragment>            mFragments          = new ArrayList<Fragment>();
-    private Fragment                       mCurrentPrimaryItem = null;
+    /**
+     * A scratch {@code Bundle} for translating between {@code Fragment}s and their indices.
+     */
+    private final Bundle mFragmentIndexBundle = new Bundle();
+
+    private SavedStateStore           mSavedState         = new SavedStateStore();
+    private LongSparseArray<Fragment> mFragments          = new LongSparseArray<Fragment>();
+    private Fragment                  mCurrentPrimaryItem = null;
+
+    private boolean mSavedStateCompressionEnabled = false;
+
+    /**
+     * The number of times the set of live {@code Fragment}s was modified.
+     */
+    private int mFragmentsModCount = 0;
+
+    /**
+     * The state returned by the last {@link #saveState()} call, if it may be reused, along with the
+     * modification counts it reflects.
+     */
+    private PagerAdapterState mLastSavedState             = null;
+    private int               mLastSavedStatesModCount    = -1;
+    private int               mLastSavedFragmentsModCount = -1;
+
+    /**
+     * The position around which spilled states were last prefetched.
+     */
+    private int mPrefetchPosition = -1;
+
+    private final ItemPositions mItemPositions = new ItemPositions(new ItemPositions.Source() {
+        @Override
+        public int getCount() {
+            return FragmentStatePagerAdapter.this.getCount();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return FragmentStatePagerAdapter.this.getItemId(position);
+        }
+    });
+
+    /**
+     * The new positions of the live {@code Fragment}s while an item range change is being applied,
+     * else {@code null}.
+     */
+    private SimpleArrayMap<Fragment, Integer> mRangePositions = null;
+
+    /**
+     * The live {@code Fragment}s whose items were removed or changed by an item range change and
+     * which are thus to be removed without saving their state.
+     */
+    private final ArrayList<Fragment> mInvalidatedFragments = new ArrayList<Fragment>();
+
+    /**
+     * Indicates whether the current transaction is kept open across updates, in order to commit
+     * all the changes caused by an item range change at once.
+     */
+    private boolean mBatchingUpdates = false;
+
+    /**
+     * The add and attach operations of offscreen pages that were not committed yet.
+     *
+     * @see #setCommitMode(int)
+     */
+    private final DeferredTransaction mDeferredTransaction;
+    private int                       mCommitMode = COMMIT_IMMEDIATE;
+
+    /**
+     * The batch of the pager tree this adapter is used by, if any.
+     *
+     * @see #setTransactionBatch(FragmentTransactionBatch)
+     */
+    private FragmentTransactionBatch mTransactionBatch;
+
+    /**
+     * The pages that were instantiated ahead of the pager and not adopted by it yet, keyed by item
+     * identifier.
+     *
+     * @see #prefetchItem(ViewGroup, int)
+     */
+    private final LongSparseArray<Fragment> mPrefetchedFragments = new LongSparseArray<Fragment>();
+
+    /**
+     * The removed {@code Fragment}s that can be reused for other pages.
+     *
+     * @see #setFragmentPoolSize(int)
+     */
+    private final FragmentPool mFragmentPool = new FragmentPool();
+
+    /**
+     * Sets the spilled states of pages that were instantiated before their states were loaded.
+     *
+     * @see #enableSavedStateSpill(Context)
+     */
+    private final SpilledStateLoader mSpilledStateLoader = new SpilledStateLoader();
 
 
     // =============================================================================================
@@ -71,6 +196,8 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
     // *********************************************************************************************
     public FragmentStatePagerAdapter(FragmentManager fm) {
         mFragmentManager = fm;
+        mDeferredTransaction = new DeferredTransaction(fm);
+        mDeferredTransaction.setStateLoader(mSpilledStateLoader);
     }
 
     // *********************************************************************************************
@@ -87,7 +214,249 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
      * {@code null}.
      */
     public Fragment getFragment(int position) {
-        return ((mFragments.size() > position) ? mFragments.get(position) : null);
+        return mFragments.get(getItemId(position));
+    }
+
+    /**
+     * Returns the maximum amount of bytes that the saved states of destroyed {@code Fragment}
+     * pages may occupy.
+     *
+     * @return The saved state budget in bytes.
+     * @see #setSavedStateBudget(int)
+     */
+    public int getSavedStateBudget() {
+        return mSavedState.getMaxBytes();
+    }
+
+    /**
+     * Sets the maximum amount of bytes that the saved states of destroyed {@code Fragment} pages
+     * may occupy. Whenever the budget is exceeded, the states of the least recently visited pages
+     * are evicted and those pages will be recreated as fresh {@code Fragment}s. By default, the
+     * budget is unbounded and saved states are never evicted.
+     *
+     * @param maxBytes The saved state budget in bytes.
+     * @see #setOnSavedStateEvictedListener(OnSavedStateEvictedListener)
+     */
+    public void setSavedStateBudget(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Saved state budget must not be negative.");
+        }
+        mSavedState.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Returns the amount of bytes currently occupied by the saved states of destroyed
+     * {@code Fragment} pages.
+     *
+     * @return The size of the saved states in bytes.
+     */
+    public int getSavedStateSize() {
+        return mSavedState.getTotalBytes();
+    }
+
+    /**
+     * Sets the listener to be notified whenever the saved state of a page is evicted.
+     *
+     * @param listener The listener to notify, or {@code null} to remove the current one.
+     */
+    public void setOnSavedStateEvictedListener(OnSavedStateEvictedListener listener) {
+        mSavedState.setOnSavedStateEvictedListener(listener);
+    }
+
+    /**
+     * @return {@code True} if the saved states of destroyed {@code Fragment} pages are compressed
+     * when this adapter's state is saved, else {@code false}.
+     */
+    public boolean isSavedStateCompressionEnabled() {
+        return mSavedStateCompressionEnabled;
+    }
+
+    /**
+     * Enables/Disables compression of the saved states of destroyed {@code Fragment} pages when
+     * this adapter's state is saved. Compression trades some CPU time on save and restore for a
+     * smaller parcel, which is worth it when many pages with sizeable states are kept.
+     *
+     * @param enabled Whether to enable or disable compression.
+     */
+    public void setSavedStateCompressionEnabled(boolean enabled) {
+        mSavedStateCompressionEnabled = enabled;
+        mLastSavedState = null;
+    }
+
+    /**
+     * Enables spilling of the saved states that exceed the saved state budget to a file inside the
+     * cache directory of the specified {@code Context}, instead of dropping them. Spilled states
+     * are read back in the background when their pages come close to the current item, and last
+     * for the lifetime of the process only, i.e. they are not part of {@link #saveState()}. The
+     * spill file is closed and its states are dropped by {@link #releaseSpilledStates()}. <p />
+     *
+     * The file is created, written and read on a background thread. An offscreen page whose state
+     * is still being read is added once the state is loaded, regardless of the commit mode, while
+     * a primary page waits for it.
+     *
+     * @param context The {@code Context} whose cache directory to use.
+     * @return Always {@code true}, since the spill file is created lazily. States that cannot be
+     * written to it are dropped.
+     * @see #setSavedStateBudget(int)
+     * @see #disableSavedStateSpill()
+     */
+    public boolean enableSavedStateSpill(Context context) {
+        if (mSavedState.getSpillFile() != null) return true;
+
+        SavedStateSpillFile spillFile = SavedStateSpillFile.create(context, this);
+        spillFile.setOnStateLoadedListener(mSpilledStateLoader);
+        mSavedState.setSpillFile(spillFile);
+        return true;
+    }
+
+    /**
+     * Disables spilling of the saved states that exceed the saved state budget. All currently
+     * spilled states are dropped and the spill file is deleted.
+     *
+     * @see #enableSavedStateSpill(Context)
+     */
+    public void disableSavedStateSpill() {
+        mSavedState.setSpillFile(null);
+    }
+
+    /**
+     * Drops all spilled states and closes the spill file, while spilling stays enabled, i.e. the
+     * file is recreated once states are spilled again. The
+     * {@link OnSavedStateEvictedListener} is notified about each dropped state. <p />
+     *
+     * {@link com.sbrukhanda.fragmentviewpager.FragmentViewPager} calls this method once it is
+     * detached from its window or its adapter is replaced. Call it when using this adapter with
+     * any other pager, so that the spill file does not outlive the adapter.
+     *
+     * @see #enableSavedStateSpill(Context)
+     */
+    public void releaseSpilledStates() {
+        mSavedState.releaseSpillFile();
+    }
+
+    /**
+     * @return The mode with which the transactions of offscreen pages are committed.
+     * @see #setCommitMode(int)
+     */
+    public int getCommitMode() {
+        return mCommitMode;
+    }
+
+    /**
+     * Sets the mode with which the transactions of offscreen pages are committed. <p />
+     *
+     * By default ({@link #COMMIT_IMMEDIATE}), all pages created by an update of the pager are
+     * committed and executed synchronously at its end, i.e. the views of all offscreen pages are
+     * inflated within the same frame as the primary page. With {@link #COMMIT_NEXT_FRAME} or
+     * {@link #COMMIT_ON_IDLE}, only the primary page is committed synchronously, while offscreen
+     * pages are committed on the next animation frame or once the main thread becomes idle,
+     * respectively. An offscreen page whose transaction is still pending is committed right away if
+     * it becomes the primary page, or dropped without ever being created if it is destroyed. <p />
+     *
+     * {@link #COMMIT_AFTER_INFLATE} additionally inflates the views of offscreen pages through the
+     * {@link PageInflater} set by the pager, e.g. those of
+     * {@link com.sbrukhanda.fragmentviewpager.AsyncInflatablePage}s, on a background thread and
+     * commits each of them on the next animation frame after its view is ready, see
+     * {@link com.sbrukhanda.fragmentviewpager.AsyncPageInflater}. Such a page that becomes the
+     * primary page before its view is ready is created synchronously. <p />
+     *
+     * Pages whose transactions are pending are returned by {@link #getFragment(int)} but are not
+     * added yet. Call {@link #executePendingTransactions()} to commit them right away.
+     *
+     * @param mode One of {@link #COMMIT_IMMEDIATE}, {@link #COMMIT_NEXT_FRAME},
+     * {@link #COMMIT_ON_IDLE} and {@link #COMMIT_AFTER_INFLATE}.
+     */
+    public void setCommitMode(int mode) {
+        mCommitMode = mode;
+        mDeferredTransaction.schedule(mode);
+    }
+
+    /**
+     * Commits and executes the pending transactions of offscreen pages right away.
+     *
+     * @see #setCommitMode(int)
+     */
+    public void executePendingTransactions() {
+        mDeferredTransaction.execute();
+    }
+
+    /**
+     * Holds back the transactions of offscreen pages regardless of the commit mode, e.g. in order
+     * to create only the primary page before the first frame is drawn. Pages that become the
+     * primary page are still committed synchronously. Once released, the held transactions are
+     * committed according to the commit mode.
+     *
+     * @param held Whether to hold or release the transactions of offscreen pages.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager#setFastStartupEnabled(boolean)
+     */
+    public void setOffscreenPagesHeld(boolean held) {
+        mDeferredTransaction.setHeld(held);
+        if (!held) {
+            mDeferredTransaction.schedule(mCommitMode);
+        }
+    }
+
+    /**
+     * Sets the batch in which the transactions committed while it is open are collected, instead of
+     * being executed right away.
+     *
+     * @param batch The batch of the pager tree this adapter is used by, or {@code null}.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager
+     */
+    public void setTransactionBatch(FragmentTransactionBatch batch) {
+        mTransactionBatch = batch;
+    }
+
+    /**
+     * Sets the inflater of the views of offscreen pages in {@link #COMMIT_AFTER_INFLATE} mode.
+     *
+     * @param inflater The inflater of the pager this adapter is used by, or {@code null}.
+     * @see com.sbrukhanda.fragmentviewpager.FragmentViewPager
+     */
+    public void setPageInflater(PageInflater inflater) {
+        mDeferredTransaction.setPageInflater(inflater);
+    }
+
+    /**
+     * Instantiates the page at the specified position ahead of the pager, e.g. because the pager
+     * is being scrolled towards it, and commits it right away. The page is adopted once the pager
+     * instantiates it through {@link #instantiateItem(ViewGroup, int)}, else it is destroyed again
+     * by {@link #cancelPrefetch()}. Does nothing if the page is already instantiated.
+     *
+     * @param container The pager's view.
+     * @param position The position of the page to instantiate.
+     */
+    public void prefetchItem(ViewGroup container, int position) {
+        if ((position < 0) || (position >= getCount()) || (getFragment(position) != null)) return;
+
+        final long itemId = getItemId(position);
+        if (DEBUG) Log.v(TAG, "Prefetching item #" + itemId);
+        Fragment fragment = (Fragment) instantiateItem(container, position);
+        mPrefetchedFragments.put(itemId, fragment);
+        if (mDeferredTransaction.isPending(fragment)) {
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mDeferredTransaction.moveTo(fragment, mCurTransaction);
+        }
+        commitTransactions();
+    }
+
+    /**
+     * Destroys all pages instantiated by {@link #prefetchItem(ViewGroup, int)} that were not
+     * adopted by the pager yet.
+     */
+    public void cancelPrefetch() {
+        if (mPrefetchedFragments.size() == 0) return;
+
+        for (int i=0; i<mPrefetchedFragments.size(); i++) {
+            long itemId = mPrefetchedFragments.keyAt(i);
+            if (DEBUG) Log.v(TAG, "Cancelling prefetched item #" + itemId);
+            destroyItem(null, mItemPositions.getLastPosition(itemId),
+                mPrefetchedFragments.valueAt(i));
+        }
+        mPrefetchedFragments.clear();
+        commitTransactions();
     }
 
     /**
@@ -98,6 +467,91 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
      */
     public abstract Fragment instantiateFragment(int position);
 
+    /**
+     * @return The maximum number of removed {@code Fragment}s that are pooled per class.
+     * @see #setFragmentPoolSize(int)
+     */
+    public int getFragmentPoolSize() {
+        return mFragmentPool.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of removed {@code Fragment}s that are pooled per class for reuse by
+     * other pages. <p />
+     *
+     * When enabled, the {@code Fragment}s of destroyed pages that implement {@link RecyclablePage}
+     * are pooled once they are removed. A page whose {@link #getFragmentClass(int)} matches a
+     * pooled {@code Fragment} reuses it instead of calling {@link #instantiateFragment(int)}, after
+     * its arguments are cleared and rebound through {@link #bindArguments(Bundle, int)}, and its
+     * saved state is cleared, i.e. it is added like a fresh instance, or with the saved state of
+     * the new page if there is one. This spares the construction of the {@code Fragment} and its
+     * arguments, while its views are still recreated by the {@code FragmentManager}. By default,
+     * pooling is disabled.
+     *
+     * @param size The maximum number of pooled {@code Fragment}s per class, or {@code 0} in order
+     * to disable pooling.
+     */
+    public void setFragmentPoolSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative pool size: " + size);
+        }
+        mFragmentPool.setMaxSize(size);
+    }
+
+    /**
+     * Returns the class of the {@code Fragment} that {@link #instantiateFragment(int)} creates for
+     * the specified position, in order to reuse a pooled {@code Fragment} of that class instead.
+     * The default implementation returns {@code null}, i.e. no pooled {@code Fragment}s are used.
+     *
+     * @param position The position of the page.
+     * @return The class of the page's {@code Fragment}, or {@code null} if it is not known.
+     * @see #setFragmentPoolSize(int)
+     */
+    public Class<? extends Fragment> getFragmentClass(int position) {
+        return null;
+    }
+
+    /**
+     * Puts the arguments of the page at the specified position into the specified {@code Bundle},
+     * i.e. the arguments that {@link #instantiateFragment(int)} would have set, in order to bind a
+     * pooled {@code Fragment} to that position. The default implementation does nothing.
+     *
+     * @param arguments The cleared arguments of the pooled {@code Fragment}.
+     * @param position The position of the page.
+     * @see #setFragmentPoolSize(int)
+     */
+    public void bindArguments(Bundle arguments, int position) {
+        // Nothing needed
+    }
+
+    /**
+     * Returns a pooled {@code Fragment} bound to the specified position, or {@code null} if none
+     * can be reused.
+     */
+    private Fragment obtainPooledFragment(int position) {
+        if (mFragmentPool.getMaxSize() == 0) return null;
+
+        Class<? extends Fragment> fragmentClass = getFragmentClass(position);
+        if (fragmentClass == null) return null;
+
+        Fragment fragment = mFragmentPool.obtain(fragmentClass);
+        if (fragment == null) return null;
+
+        // The Fragment still holds the view state of its previous page, or the initial state of
+        // that page if its add was cancelled, which must not be restored into the new page
+        FragmentStateAccess.clearSavedState(fragment);
+        ((RecyclablePage) fragment).onRecycle();
+        Bundle arguments = fragment.getArguments();
+        if (arguments != null) {
+            arguments.clear();
+        } else {
+            arguments = new Bundle();
+            fragment.setArguments(arguments);
+        }
+        bindArguments(arguments, position);
+        return fragment;
+    }
+
     // *********************************************************************************************
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
@@ -110,6 +564,9 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
 
         Fragment existingFragment = getFragment(position);
         if (existingFragment != null) {
+            // This also adopts the page if it was prefetched
+            mPrefetchedFragments.remove(getItemId(position));
+            mItemPositions.put(getItemId(position), position);
             return existingFragment;
         }
 
@@ -117,25 +574,39 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
         // Else, continue with normal flow.
         // -----------------------------------------------------------------------------------------
 
-        if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
-        }
+        final long itemId = getItemId(position);
 
-        Fragment fragment = instantiateFragment(position);
-        if (DEBUG) Log.v(TAG, "Adding item #" + position + ": f=" + fragment);
-        if (mSavedState.size() > position) {
-            Fragment.SavedState fss = mSavedState.get(position);
-            if (fss != null) {
-                fragment.setInitialSavedState(fss);
-            }
-        }
-        while (mFragments.size() <= position) {
-            mFragments.add(null);
+        Fragment fragment = obtainPooledFragment(position);
+        if (fragment == null) {
+            fragment = instantiateFragment(position);
+        } else if (DEBUG) {
+            Log.v(TAG, "Reusing pooled fragment for item #" + itemId);
         }
+        if (DEBUG) Log.v(TAG, "Adding item #" + itemId + ": f=" + fragment);
         fragment.setMenuVisibility(false);
         fragment.setUserVisibleHint(false);
-        mFragments.set(position, fragment);
-        mCurTransaction.add(container.getId(), fragment);
+        mFragments.put(itemId, fragment);
+        mFragmentsModCount++;
+        mItemPositions.put(itemId, position);
+        if (!mSavedState.isLoaded(itemId)) {
+            // The spilled state is read in the background, and the page is added once it is set
+            mSavedState.prefetch(itemId);
+            mDeferredTransaction.addLoadingState(container, fragment);
+            return fragment;
+        }
+
+        Fragment.SavedState fss = mSavedState.take(itemId);
+        if (fss != null) {
+            fragment.setInitialSavedState(fss);
+        }
+        if ((mCommitMode != COMMIT_IMMEDIATE) || mDeferredTransaction.isHeld()) {
+            mDeferredTransaction.add(container, fragment, null, fss);
+        } else {
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mCurTransaction.add(container.getId(), fragment);
+        }
 
         return fragment;
     }
@@ -145,18 +616,43 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
     public void destroyItem(ViewGroup container, int position, Object object) {
         Fragment fragment = (Fragment)object;
 
-        if (mCurTransaction == null) {
+        // A Fragment whose add was not committed yet never reached the FragmentManager, thus its
+        // initial state is still its saved state and there is nothing to remove
+        DeferredTransaction.Op pendingOp = mDeferredTransaction.cancel(fragment);
+        if ((mCurTransaction == null) && (pendingOp == null)) {
             mCurTransaction = mFragmentManager.beginTransaction();
         }
-        if (DEBUG) Log.v(TAG, "Removing item #" + position + ": f=" + object
+        if (mInvalidatedFragments.remove(fragment)) {
+            // The item was removed or changed by an item range change, thus its state is obsolete
+            if (DEBUG) Log.v(TAG, "Removing invalidated item: f=" + object
+                + " v=" + fragment.getView());
+            if (pendingOp == null) {
+                mCurTransaction.remove(fragment);
+            }
+            mFragmentPool.put(fragment);
+            return;
+        }
+
+        final long itemId = getItemId(fragment, position);
+
+        if (DEBUG) Log.v(TAG, "Removing item #" + itemId + ": f=" + object
             + " v=" + ((Fragment)object).getView());
-        while (mSavedState.size() <= position) {
-            mSavedState.add(null);
+        if (hasStableIds() && (mItemPositions.positionOf(itemId, position) == POSITION_NONE)) {
+            // The item was removed from the data set, thus its state will never be needed again
+            mSavedState.remove(itemId);
+        } else if (pendingOp == null) {
+            mSavedState.put(itemId, mFragmentManager.saveFragmentInstanceState(fragment));
+        } else if (pendingOp.mState != null) {
+            mSavedState.put(itemId, pendingOp.mState);
         }
-        mSavedState.set(position, mFragmentManager.saveFragmentInstanceState(fragment));
-        mFragments.set(position, null);
+        mFragments.remove(itemId);
+        mFragmentsModCount++;
+        mItemPositions.remove(itemId);
 
-        mCurTransaction.remove(fragment);
+        if (pendingOp == null) {
+            mCurTransaction.remove(fragment);
+        }
+        mFragmentPool.put(fragment);
     }
 
     // *********************************************************************************************
@@ -174,16 +670,57 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
             }
             mCurrentPrimaryItem = fragment;
         }
+        prefetchSavedStates(container, position);
+    }
+
+    /**
+     * Starts reading the spilled states of the pages that are within the offscreen page limit of
+     * the specified position, or just about to come into it.
+     */
+    private void prefetchSavedStates(ViewGroup container, int position) {
+        if ((mSavedState.getSpillFile() == null) || (position == mPrefetchPosition)) return;
+        mPrefetchPosition = position;
+
+        int limit = ((container instanceof ViewPager)
+            ? ((ViewPager) container).getOffscreenPageLimit() : 1) + 1;
+        int start = Math.max(0, position - limit);
+        int end = Math.min(getCount() - 1, position + limit);
+        for (int i=start; i<=end; i++) {
+            mSavedState.prefetch(getItemId(i));
+        }
     }
 
     // *********************************************************************************************
     @Override
     public void finishUpdate(ViewGroup container) {
+        if (mBatchingUpdates) return;
+
+        commitTransactions();
+    }
+
+    /**
+     * Commits and executes the current transaction, along with the pending operation of the
+     * primary page if any, and schedules the commit of the pending operations of offscreen pages.
+     * While the {@link FragmentTransactionBatch} is open, the transaction is executed along with
+     * the batch instead.
+     */
+    private void commitTransactions() {
+        if ((mCurrentPrimaryItem != null) && mDeferredTransaction.isPending(mCurrentPrimaryItem)) {
+            if (mCurTransaction == null) {
+                mCurTransaction = mFragmentManager.beginTransaction();
+            }
+            mDeferredTransaction.moveTo(mCurrentPrimaryItem, mCurTransaction);
+        }
         if (mCurTransaction != null) {
             mCurTransaction.commitAllowingStateLoss();
             mCurTransaction = null;
-            mFragmentManager.executePendingTransactions();
+            if ((mTransactionBatch != null) && mTransactionBatch.isOpen()) {
+                mTransactionBatch.add(mFragmentManager);
+            } else {
+                mFragmentManager.executePendingTransactions();
+            }
         }
+        mDeferredTransaction.schedule(mCommitMode);
     }
 
     // *********************************************************************************************
@@ -192,59 +729,411 @@ public abstract class FragmentStatePagerAdapter extends PagerAdapter
         return ((Fragment)object).getView() == view;
     }
 
-    // *********************************************************************************************
+    /**
+     * {@inheritDoc} <p />
+     *
+     * The returned state is reused for as long as no pages are created, destroyed or restored.
+     * Otherwise, the saved states of destroyed pages are shared with the new state rather than
+     * copied, and each of them is compressed only once, thus the cost of saving the state depends
+     * on the churn since the last save, not on the size of the stored states. <p />
+     *
+     * Pages whose operations are still pending are not part of the saved {@code FragmentManager}
+     * state, which may already have been saved (e.g. for a pager nested inside a {@code Fragment}).
+     * Thus, only their initial saved states are stored, and they are recreated once restored. The
+     * states of pending pages that are still being read from the spill file are not stored, like
+     * all spilled states.
+     */
     @Override
     public Parcelable saveState() {
-        Bundle state = null;
-        if (mSavedState.size() > 0) {
-            state = new Bundle();
-            Fragment.SavedState[] fss = new Fragment.SavedState[mSavedState.size()];
-            mSavedState.toArray(fss);
-            state.putParcelableArray("states", fss);
+        final int statesModCount = mSavedState.getModCount();
+        final boolean statesChanged = (statesModCount != mLastSavedStatesModCount);
+        if ((mLastSavedState != null) && !statesChanged
+                && (mFragmentsModCount == mLastSavedFragmentsModCount)) {
+            return mLastSavedState;
         }
+
+        // -----------------------------------------------------------------------------------------
+        // Collect the live Fragments. Those that are not added yet cannot be saved, so only the
+        // initial states of the pending ones are kept, and the result is not reused in that case
+        // in order to pick them up once they are added.
+        // -----------------------------------------------------------------------------------------
+
+        int fragmentsCount = 0;
+        int pendingCount = 0;
+        boolean allFragmentsAdded = true;
         for (int i=0; i<mFragments.size(); i++) {
-            Fragment f = mFragments.get(i);
+            Fragment f = mFragments.valueAt(i);
             if (f != null && f.isAdded()) {
-                if (state == null) {
-                    state = new Bundle();
+                fragmentsCount++;
+            } else {
+                allFragmentsAdded = false;
+                if ((f != null) && (mDeferredTransaction.getPendingState(f) != null)) {
+                    pendingCount++;
                 }
-                String key = "f" + i;
-                mFragmentManager.putFragment(state, key, f);
             }
         }
-        return state;
+        long[] fragmentIds = new long[fragmentsCount];
+        int[] fragmentIndices = new int[fragmentsCount];
+        long[] pendingIds = new long[pendingCount];
+        Fragment.SavedState[] pendingStates = new Fragment.SavedState[pendingCount];
+        for (int i=0, n=0, p=0; i<mFragments.size(); i++) {
+            Fragment f = mFragments.valueAt(i);
+            if (f != null && f.isAdded()) {
+                fragmentIds[n] = mFragments.keyAt(i);
+                fragmentIndices[n] = getFragmentIndex(f);
+                n++;
+            } else if (f != null) {
+                Fragment.SavedState pendingState = mDeferredTransaction.getPendingState(f);
+                if (pendingState != null) {
+                    pendingIds[p] = mFragments.keyAt(i);
+                    pendingStates[p] = pendingState;
+                    p++;
+                }
+            }
+        }
+
+        // -----------------------------------------------------------------------------------------
+        // Reuse the saved states of the previous snapshot if they did not change.
+        // -----------------------------------------------------------------------------------------
+
+        PagerAdapterState state;
+        if ((mLastSavedState != null) && !statesChanged) {
+            state = mLastSavedState.withFragments(fragmentIds, fragmentIndices);
+        } else if ((mSavedState.size() > 0) || (fragmentsCount > 0)) {
+            state = PagerAdapterState.create(mSavedState, fragmentIds, fragmentIndices,
+                mSavedStateCompressionEnabled);
+        } else {
+            state = null;
+        }
+
+        mLastSavedState = (allFragmentsAdded ? state : null);
+        mLastSavedStatesModCount = statesModCount;
+        mLastSavedFragmentsModCount = mFragmentsModCount;
+        if (pendingCount == 0) return state;
+
+        if (state == null) {
+            state = PagerAdapterState.create(mSavedState, fragmentIds, fragmentIndices,
+                mSavedStateCompressionEnabled);
+        }
+        return state.withStates(pendingIds, pendingStates);
     }
 
     // *********************************************************************************************
     @Override
     public void restoreState(Parcelable state, ClassLoader loader) {
-        if (state != null) {
-            Bundle bundle = (Bundle)state;
-            bundle.setClassLoader(loader);
-            Parcelable[] fss = bundle.getParcelableArray("states");
-            mSavedState.clear();
-            mFragments.clear();
-            if (fss != null) {
-                for (int i=0; i<fss.length; i++) {
-                    mSavedState.add((Fragment.SavedState)fss[i]);
+        if (state instanceof PagerAdapterState) {
+            restoreState((PagerAdapterState) state);
+        } else if (state != null) {
+            restoreBundleState((Bundle) state, loader);
+        }
+    }
+
+    // *********************************************************************************************
+    private void restoreState(PagerAdapterState state) {
+        mSavedState.clear();
+        mPrefetchedFragments.clear();
+        mFragments.clear();
+        mItemPositions.clear();
+        mFragmentsModCount++;
+        state.restoreStates(mSavedState);
+        for (int i=0; i<state.mFragmentIds.length; i++) {
+            Fragment f = getFragmentByIndex(state.mFragmentIndices[i]);
+            if (f != null) {
+                f.setMenuVisibility(false);
+                mFragments.put(state.mFragmentIds[i], f);
+            } else {
+                Log.w(TAG, "Bad fragment at index " + state.mFragmentIndices[i]);
+            }
+        }
+    }
+
+    /**
+     * Restores the {@code Bundle} based state saved by previous versions of this adapter.
+     */
+    private void restoreBundleState(Bundle bundle, ClassLoader loader) {
+        bundle.setClassLoader(loader);
+        long[] ids = bundle.getLongArray("ids");
+        Parcelable[] fss = bundle.getParcelableArray("states");
+        mSavedState.clear();
+        mFragments.clear();
+        mPrefetchedFragments.clear();
+        mItemPositions.clear();
+        mFragmentsModCount++;
+        if (fss != null) {
+            for (int i=0; i<fss.length; i++) {
+                // States saved by the list-based implementation are indexed by position
+                long itemId = ((ids != null) ? ids[i] : i);
+                mSavedState.put(itemId, (Fragment.SavedState)fss[i]);
+            }
+        }
+        Iterable<String> keys = bundle.keySet();
+        for (String key: keys) {
+            if (key.startsWith("f")) {
+                long itemId = Long.parseLong(key.substring(1));
+                Fragment f = mFragmentManager.getFragment(bundle, key);
+                if (f != null) {
+                    f.setMenuVisibility(false);
+                    mFragments.put(itemId, f);
+                } else {
+                    Log.w(TAG, "Bad fragment at key " + key);
                 }
             }
-            Iterable<String> keys = bundle.keySet();
-            for (String key: keys) {
-                if (key.startsWith("f")) {
-                    int index = Integer.parseInt(key.substring(1));
-                    Fragment f = mFragmentManager.getFragment(bundle, key);
-                    if (f != null) {
-                        while (mFragments.size() <= index) {
-                            mFragments.add(null);
-                        }
-                        f.setMenuVisibility(false);
-                        mFragments.set(index, f);
-                    } else {
-                        Log.w(TAG, "Bad fragment at key " + key);
-                    }
+        }
+    }
+
+    /**
+     * Returns the index under which the {@code FragmentManager} keeps the specified active
+     * {@code Fragment}. The {@code FragmentManager} exposes it only through
+     * {@code putFragment()}, which stores the index as an {@code int} under the specified key.
+     */
+    private int getFragmentIndex(Fragment fragment) {
+        mFragmentManager.putFragment(mFragmentIndexBundle, FRAGMENT_INDEX_KEY, fragment);
+        return mFragmentIndexBundle.getInt(FRAGMENT_INDEX_KEY);
+    }
+
+    /**
+     * Returns the active {@code Fragment} that the {@code FragmentManager} keeps under the
+     * specified index.
+     *
+     * @see #getFragmentIndex(Fragment)
+     */
+    private Fragment getFragmentByIndex(int index) {
+        mFragmentIndexBundle.putInt(FRAGMENT_INDEX_KEY, index);
+        return mFragmentManager.getFragment(mFragmentIndexBundle, FRAGMENT_INDEX_KEY);
+    }
+
+    /**
+     * Returns the item identifier of the specified live {@code Fragment}, which was instantiated at
+     * the specified position. The position is used only if the {@code Fragment} is not known.
+     */
+    private long getItemId(Fragment fragment, int position) {
+        int index = mFragments.indexOfValue(fragment);
+        return ((index >= 0) ? mFragments.keyAt(index) : getItemId(position));
+    }
+
+    /**
+     * Indicates whether each item's identifier returned by {@link #getItemId(int)} is unique and
+     * stays the same for as long as the item is part of the data set, regardless of its position.
+     * <p />
+     *
+     * When {@code true}, {@link #notifyDataSetChanged()} resolves the new position of each live
+     * page by its item identifier. Thus, only pages whose items were removed are destroyed, their
+     * saved states are dropped, and only pages whose items were inserted are instantiated. The
+     * default implementation returns {@code false}, i.e. all pages keep their positions.
+     *
+     * @return {@code True} if this adapter's item identifiers are stable, else {@code false}.
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    // *********************************************************************************************
+    @Override
+    public int getItemPosition(Object object) {
+        if (mRangePositions != null) {
+            Integer position = mRangePositions.get(object);
+            if (position != null) return position;
+        }
+        if (!hasStableIds()) return super.getItemPosition(object);
+
+        int index = mFragments.indexOfValue((Fragment) object);
+        return ((index >= 0) ? mItemPositions.resolve(mFragments.keyAt(index)) : POSITION_NONE);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void notifyDataSetChanged() {
+        cancelPrefetch();
+        mItemPositions.invalidate();
+        if (hasStableIds()) {
+            dropRemovedSavedStates();
+        }
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Notifies that the specified range of items was inserted into the data set. Only the pages
+     * affected by the insertion are updated, and all resulting {@code Fragment} changes are
+     * committed in a single transaction. <p />
+     *
+     * If this adapter does not have stable identifiers, its item identifiers are assumed to be
+     * positions, thus stored pages after the inserted range are re-keyed accordingly.
+     *
+     * @param positionStart The position of the first inserted item.
+     * @param itemCount The number of inserted items.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_INSERTED, positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that the specified range of items was removed from the data set. The pages of the
+     * removed items are destroyed without their states being kept, and all resulting
+     * {@code Fragment} changes are committed in a single transaction. <p />
+     *
+     * If this adapter does not have stable identifiers, its item identifiers are assumed to be
+     * positions, thus stored pages after the removed range are re-keyed accordingly.
+     *
+     * @param positionStart The former position of the first removed item.
+     * @param itemCount The number of removed items.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_REMOVED, positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that the content of the specified range of items has changed. The live pages of the
+     * changed items are recreated and their saved states are dropped, while all other pages are
+     * left untouched. All resulting {@code Fragment} changes are committed in a single
+     * transaction.
+     *
+     * @param positionStart The position of the first changed item.
+     * @param itemCount The number of changed items.
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        applyItemRangeChange(ItemPositions.RANGE_CHANGED, positionStart, itemCount);
+    }
+
+    // *********************************************************************************************
+    private void applyItemRangeChange(int type, int start, int count) {
+        if (count <= 0) return;
+        cancelPrefetch();
+
+        final boolean stableIds = hasStableIds();
+
+        // -----------------------------------------------------------------------------------------
+        // Resolve the new positions of the live Fragments by their last known positions.
+        // -----------------------------------------------------------------------------------------
+
+        mRangePositions = new SimpleArrayMap<Fragment, Integer>(mFragments.size());
+        for (int i=mFragments.size()-1; i>=0; i--) {
+            long itemId = mFragments.keyAt(i);
+            int lastPosition = mItemPositions.getLastPosition(itemId);
+            if ((lastPosition < 0) && stableIds) continue;
+
+            Fragment f = mFragments.valueAt(i);
+            int position = ItemPositions.applyRange(type, start, count,
+                ((lastPosition >= 0) ? lastPosition : (int) itemId));
+            mRangePositions.put(f, position);
+            if (position == POSITION_NONE) {
+                mFragments.removeAt(i);
+                mInvalidatedFragments.add(f);
+            }
+        }
+
+        // -----------------------------------------------------------------------------------------
+        // Re-key the stored pages if their identifiers are positions.
+        // -----------------------------------------------------------------------------------------
+
+        if (!stableIds) {
+            switch (type) {
+                case ItemPositions.RANGE_INSERTED:
+                    mSavedState.shift(start, count);
+                    LongSparseArrays.shift(mFragments, start, count);
+                    break;
+
+                case ItemPositions.RANGE_REMOVED:
+                    mSavedState.removeRange(start, start + count);
+                    mSavedState.shift(start + count, -count);
+                    LongSparseArrays.shift(mFragments, start + count, -count);
+                    break;
+
+                default:
+                    mSavedState.removeRange(start, start + count);
+                    break;
+            }
+        }
+        mItemPositions.clear();
+        for (int i=0; i<mFragments.size(); i++) {
+            Integer position = mRangePositions.get(mFragments.valueAt(i));
+            if (position != null) {
+                mItemPositions.put(mFragments.keyAt(i), position);
+            }
+        }
+        mFragmentsModCount++;
+
+        // -----------------------------------------------------------------------------------------
+        // Let the pager apply the new positions and commit all resulting changes at once.
+        // -----------------------------------------------------------------------------------------
+
+        mBatchingUpdates = true;
+        try {
+            super.notifyDataSetChanged();
+        } finally {
+            mBatchingUpdates = false;
+            mRangePositions = null;
+        }
+        commitTransactions();
+    }
+
+    /**
+     * Drops the saved states of the items that are no longer part of the data set.
+     */
+    private void dropRemovedSavedStates() {
+        for (int i=mSavedState.size()-1; i>=0; i--) {
+            long itemId = mSavedState.keyAt(i);
+            if (mItemPositions.positionOf(itemId, -1) == POSITION_NONE) {
+                mSavedState.remove(itemId);
+            }
+        }
+    }
+
+    /**
+     * Return a unique identifier for the item at the given position. The returned identifier is
+     * used as the key under which the item's {@code Fragment} and its saved state are stored.
+     *
+     * <p>The default implementation returns the given position.
+     * Subclasses should override this method if the positions of items can change.</p>
+     *
+     * @param position Position within this adapter
+     * @return Unique identifier for the item at position
+     * @see #hasStableIds()
+     */
+    public long getItemId(int position) {
+        return position;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * Sets the spilled states of the pages whose add operations wait for them, either once they
+     * are loaded in the background, or by waiting for them when the pages must be added right
+     * away.
+     */
+    private final class SpilledStateLoader
+            implements SavedStateSpillFile.OnStateLoadedListener, DeferredTransaction.StateLoader
+    {
+        // *****************************************************************************************
+        @Override
+        public void onStateLoaded(long key) {
+            // States may have moved to other keys while being loaded, thus all waiting pages are
+            // checked, and the loads of those whose states are still not loaded are restarted
+            boolean changed = false;
+            for (int i=0; i<mFragments.size(); i++) {
+                Fragment fragment = mFragments.valueAt(i);
+                if ((fragment == null) || !mDeferredTransaction.isLoadingState(fragment)) continue;
+
+                long itemId = mFragments.keyAt(i);
+                if (mSavedState.isLoaded(itemId)) {
+                    mDeferredTransaction.setState(fragment, mSavedState.take(itemId));
+                    changed = true;
+                } else {
+                    mSavedState.prefetch(itemId);
                 }
             }
+            if (changed) {
+                mDeferredTransaction.schedule(mCommitMode);
+            }
+        }
+
+        // *****************************************************************************************
+        @Override
+        public Fragment.SavedState awaitState(Fragment page) {
+            int index = mFragments.indexOfValue(page);
+            return ((index >= 0) ? mSavedState.take(mFragments.keyAt(index)) : null);
         }
     }
-}
\ No newline at end of file
+}
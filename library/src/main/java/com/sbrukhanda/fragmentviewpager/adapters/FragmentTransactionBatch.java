@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.app.FragmentManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Coordinates the execution of the transactions committed by the {@code Fragment} adapters of a
+ * tree of nested pagers. Each tree owns its own batch, which is installed on the adapters of all
+ * its pagers, see {@link FragmentStatePagerAdapter#setTransactionBatch(FragmentTransactionBatch)}.
+ * <p />
+ *
+ * While the batch is open, the adapters commit their transactions without executing them and
+ * register their {@code FragmentManager}s instead. Once {@link #execute()} is called outside of
+ * the batch, all registered {@code FragmentManager}s execute their pending transactions in a single
+ * pass, in the order in which they were registered, i.e. parents before their children. Opening the
+ * batch may be nested, and it must only be used from the main thread.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public final class FragmentTransactionBatch
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String  TAG   = FragmentTransactionBatch.class.getSimpleName();
+    private static final boolean DEBUG = true;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    /**
+     * The number of times this batch is currently opened.
+     */
+    private int mDepth = 0;
+
+    /**
+     * The {@code FragmentManager}s whose committed transactions were not executed yet.
+     */
+    private final ArrayList<FragmentManager> mFragmentManagers = new ArrayList<FragmentManager>();
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    /**
+     * Opens this batch. Every call must be balanced by a call to {@link #end()}.
+     */
+    public void begin() {
+        mDepth++;
+    }
+
+    /**
+     * Closes this batch as opened by the matching {@link #begin()} call. The registered
+     * transactions are not executed until {@link #execute()} is called.
+     */
+    public void end() {
+        if (mDepth == 0) {
+            throw new IllegalStateException("Batch is not open");
+        }
+        mDepth--;
+    }
+
+    /**
+     * Executes the pending transactions of all registered {@code FragmentManager}s, unless this
+     * batch is open.
+     *
+     * @return {@code True} if any transactions were executed, else {@code false}.
+     */
+    public boolean execute() {
+        if ((mDepth > 0) || mFragmentManagers.isEmpty()) return false;
+
+        if (DEBUG) Log.v(TAG, "Executing " + mFragmentManagers.size()
+            + " batched fragment managers");
+        for (int i=0; i<mFragmentManagers.size(); i++) {
+            try {
+                mFragmentManagers.get(i).executePendingTransactions();
+            } catch (IllegalStateException ex) {
+                // The host was destroyed before the batch ended, thus its pages are not needed
+                Log.w(TAG, "Dropping batched transactions", ex);
+            }
+        }
+        mFragmentManagers.clear();
+        return true;
+    }
+
+    /**
+     * @return {@code True} if any registered transactions were not executed yet, else
+     * {@code false}.
+     */
+    public boolean hasPendingTransactions() {
+        return !mFragmentManagers.isEmpty();
+    }
+
+    /**
+     * @return {@code True} if this batch is currently open, else {@code false}.
+     */
+    boolean isOpen() {
+        return (mDepth > 0);
+    }
+
+    /**
+     * Registers the specified {@code FragmentManager} for executing its pending transactions once
+     * this batch is executed.
+     */
+    void add(FragmentManager fm) {
+        if (!mFragmentManagers.contains(fm)) {
+            mFragmentManagers.add(fm);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.view.PagerAdapter;
+
+/**
+ * Tracks the positions of an adapter's live items by their stable identifiers and resolves their
+ * new positions after the adapter's data set has changed. <p />
+ *
+ * Each live item is first checked at its last known position, which covers unchanged and in-place
+ * changed items in constant time. Only if an item has moved, an identifier to position index of the
+ * whole data set is built, once per data set change.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class ItemPositions
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    /**
+     * The types of item range changes.
+     *
+     * @see #applyRange(int, int, int, int)
+     */
+    static final int RANGE_INSERTED = 0;
+    static final int RANGE_REMOVED  = 1;
+    static final int RANGE_CHANGED  = 2;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final Source mSource;
+
+    /**
+     * The last known positions of the live items, keyed by item identifier.
+     */
+    private final LongSparseArray<Integer> mLastPositions = new LongSparseArray<Integer>();
+
+    /**
+     * The positions of all items of the current data set, keyed by item identifier, or
+     * {@code null} if not built yet.
+     */
+    private LongSparseArray<Integer> mPositions;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    ItemPositions(Source source) {
+        mSource = source;
+    }
+
+    /**
+     * Records the specified position as the last known one of the specified live item.
+     */
+    void put(long itemId, int position) {
+        mLastPositions.put(itemId, position);
+    }
+
+    /**
+     * Returns the last known position of the specified live item, or {@code -1} if unknown.
+     */
+    int getLastPosition(long itemId) {
+        Integer position = mLastPositions.get(itemId);
+        return ((position != null) ? position : -1);
+    }
+
+    // *********************************************************************************************
+    void remove(long itemId) {
+        mLastPositions.remove(itemId);
+    }
+
+    // *********************************************************************************************
+    void clear() {
+        mLastPositions.clear();
+        mPositions = null;
+    }
+
+    /**
+     * Notifies that the data set has changed, which invalidates the index of all items.
+     */
+    void invalidate() {
+        mPositions = null;
+    }
+
+    /**
+     * Returns the current position of the specified live item, or
+     * {@link PagerAdapter#POSITION_NONE} if it is no longer part of the data set. The resolved
+     * position is recorded as the item's last known one.
+     */
+    int resolve(long itemId) {
+        Integer lastPosition = mLastPositions.get(itemId);
+        int position = positionOf(itemId, ((lastPosition != null) ? lastPosition : -1));
+        if (position != PagerAdapter.POSITION_NONE) {
+            mLastPositions.put(itemId, position);
+        }
+        return position;
+    }
+
+    /**
+     * Returns the current position of the specified item, checking the specified position first,
+     * or {@link PagerAdapter#POSITION_NONE} if it is not part of the data set.
+     */
+    int positionOf(long itemId, int hint) {
+        if ((hint >= 0) && (hint < mSource.getCount()) && (mSource.getItemId(hint) == itemId)) {
+            return hint;
+        }
+
+        if (mPositions == null) {
+            final int count = mSource.getCount();
+            mPositions = new LongSparseArray<Integer>(count);
+            for (int i=0; i<count; i++) {
+                mPositions.put(mSource.getItemId(i), i);
+            }
+        }
+        Integer position = mPositions.get(itemId);
+        return ((position != null) ? position : PagerAdapter.POSITION_NONE);
+    }
+
+    /**
+     * Returns the position of the item that was at the specified position before the specified
+     * range change, or {@link PagerAdapter#POSITION_NONE} if it was removed or changed.
+     */
+    static int applyRange(int type, int start, int count, int position) {
+        if (position < start) return position;
+
+        switch (type) {
+            case RANGE_INSERTED:
+                return position + count;
+
+            case RANGE_REMOVED:
+                return ((position < start + count) ? PagerAdapter.POSITION_NONE : position - count);
+
+            default:
+                return ((position < start + count) ? PagerAdapter.POSITION_NONE : position);
+        }
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * The source of the items whose positions are tracked.
+     */
+    interface Source
+    {
+        int getCount();
+
+        long getItemId(int position);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.util.LongSparseArray;
+
+/**
+ * Provides utility functions for re-keying {@code LongSparseArray}s whose keys are positions. All
+ * functions only touch the entries whose keys are affected, as keys are kept sorted.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class LongSparseArrays
+{
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    private LongSparseArrays() {
+        // Prevent class instantiation
+    }
+
+    /**
+     * Removes all entries whose keys are within {@code [start, end)}.
+     */
+    static <E> void removeRange(LongSparseArray<E> array, long start, long end) {
+        for (int i=array.size()-1; (i>=0) && (array.keyAt(i) >= start); i--) {
+            if (array.keyAt(i) < end) {
+                array.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Adds the specified delta to all keys that are greater than or equal to {@code start}. The
+     * shifted keys must not collide with the keys that are not shifted.
+     */
+    static <E> void shift(LongSparseArray<E> array, long start, long delta) {
+        int first = array.size();
+        while ((first > 0) && (array.keyAt(first - 1) >= start)) {
+            first--;
+        }
+
+        final int count = array.size() - first;
+        if ((count == 0) || (delta == 0)) return;
+
+        long[] keys = new long[count];
+        Object[] values = new Object[count];
+        for (int i=0; i<count; i++) {
+            keys[i] = array.keyAt(first + i);
+            values[i] = array.valueAt(first + i);
+        }
+        for (int i=array.size()-1; i>=first; i--) {
+            array.removeAt(i);
+        }
+        for (int i=0; i<count; i++) {
+            @SuppressWarnings("unchecked")
+            E value = (E) values[i];
+            array.put(keys[i] + delta, value);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+/**
+ * The interface for receiving notifications about saved {@code Fragment} page states that were
+ * evicted from an adapter because its saved state budget was exceeded.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public interface OnSavedStateEvictedListener
+{
+    /**
+     * Called when the saved state of the page with the specified item identifier was evicted. The
+     * page will be recreated as a fresh {@code Fragment} the next time it is instantiated.
+     *
+     * @param itemId The identifier of the page whose saved state was evicted.
+     */
+    void onSavedStateEvicted(long itemId);
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.app.Fragment;
+import android.view.ViewGroup;
+
+/**
+ * The interface for inflating the views of offscreen {@code Fragment} pages in the background
+ * before their transactions are committed, see
+ * {@link FragmentStatePagerAdapter#COMMIT_AFTER_INFLATE}.
+ * {@link com.sbrukhanda.fragmentviewpager.FragmentViewPager} installs an implementation on its
+ * adapter, which inflates {@link com.sbrukhanda.fragmentviewpager.AsyncInflatablePage}s into its
+ * {@link com.sbrukhanda.fragmentviewpager.PageViewPool}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public interface PageInflater
+{
+    /**
+     * Starts inflating the view of the specified page in the background, if the page supports it.
+     * Called on the main thread.
+     *
+     * @param page The page whose view to inflate.
+     * @param container The container the page will be added to.
+     * @param listener The listener to notify on the main thread once the view is ready.
+     * @return {@code True} if inflating was started and the listener will be notified, else
+     * {@code false}.
+     */
+    boolean inflate(Fragment page, ViewGroup container, OnPageInflatedListener listener);
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * The listener for pages whose views were inflated in the background.
+     */
+    interface OnPageInflatedListener
+    {
+        /**
+         * Called on the main thread once the view of the specified page is ready, or once inflating
+         * it failed.
+         *
+         * @param page The page whose view was inflated.
+         */
+        void onPageInflated(Fragment page);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.app.Fragment;
+import android.support.v4.os.ParcelableCompat;
+import android.support.v4.os.ParcelableCompatCreatorCallbacks;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compact saved state of a {@code Fragment} pager adapter. <p />
+ *
+ * Instead of a string-keyed {@code Bundle}, the saved states of destroyed pages are stored as
+ * marshalled {@code Fragment.SavedState}s, each optionally compressed on its own, along with packed
+ * arrays of their item identifiers and lengths. Live {@code Fragment}s are stored as packed arrays
+ * of their item identifiers and {@code FragmentManager} indices. Thus, restoring this state is
+ * linear in the amount of stored pages and involves no key parsing. <p />
+ *
+ * The marshalled and compressed states are shared with the {@link SavedStateStore} they were
+ * taken from, which keeps them for as long as their pages stay destroyed. Thus, a new state only
+ * copies references and compresses the states that were saved since the previous one.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public final class PagerAdapterState implements Parcelable
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String TAG = PagerAdapterState.class.getSimpleName();
+
+    private static final int FLAG_COMPRESSED = 0x1;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    /**
+     * The item identifiers of the marshalled states and their uncompressed lengths.
+     */
+    final long[] mStateIds;
+    final int[]  mStateLengths;
+
+    /**
+     * The marshalled states, uncompressed. A state is {@code null} if it could not be
+     * decompressed.
+     */
+    final byte[][] mStates;
+
+    /**
+     * The compressed marshalled states, or {@code null} if compression is disabled.
+     */
+    final byte[][] mCompressedStates;
+
+    /**
+     * The item identifiers of the states that could not be marshalled (e.g. because they contain
+     * active objects), which are thus stored as regular {@code Parcelable}s.
+     */
+    final long[]                mParcelableStateIds;
+    final Fragment.SavedState[] mParcelableStates;
+
+    /**
+     * The item identifiers of the live {@code Fragment}s and their {@code FragmentManager}
+     * indices.
+     */
+    final long[] mFragmentIds;
+    final int[]  mFragmentIndices;
+
+    final boolean mCompressed;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    PagerAdapterState(long[] stateIds, int[] stateLengths, byte[][] states,
+                      byte[][] compressedStates, long[] parcelableStateIds,
+                      Fragment.SavedState[] parcelableStates, long[] fragmentIds,
+                      int[] fragmentIndices) {
+        mStateIds = stateIds;
+        mStateLengths = stateLengths;
+        mStates = states;
+        mCompressedStates = compressedStates;
+        mCompressed = (compressedStates != null);
+        mParcelableStateIds = parcelableStateIds;
+        mParcelableStates = parcelableStates;
+        mFragmentIds = fragmentIds;
+        mFragmentIndices = fragmentIndices;
+    }
+
+    // *********************************************************************************************
+    private PagerAdapterState(Parcel in, ClassLoader loader) {
+        int flags = in.readInt();
+        mCompressed = ((flags & FLAG_COMPRESSED) != 0);
+        mStateIds = in.createLongArray();
+        mStateLengths = in.createIntArray();
+        mStates = new byte[mStateIds.length][];
+        mCompressedStates = (mCompressed ? new byte[mStateIds.length][] : null);
+        for (int i=0; i<mStateIds.length; i++) {
+            byte[] state = in.createByteArray();
+            if (mCompressed) {
+                mCompressedStates[i] = state;
+                mStates[i] = inflate(state, mStateLengths[i]);
+            } else {
+                mStates[i] = state;
+            }
+        }
+        mParcelableStateIds = in.createLongArray();
+        Parcelable[] parcelableStates = in.readParcelableArray(loader);
+        mParcelableStates = new Fragment.SavedState[parcelableStates.length];
+        for (int i=0; i<parcelableStates.length; i++) {
+            mParcelableStates[i] = (Fragment.SavedState) parcelableStates[i];
+        }
+        mFragmentIds = in.createLongArray();
+        mFragmentIndices = in.createIntArray();
+    }
+
+    /**
+     * Creates a new {@code PagerAdapterState} out of the saved states of the specified store and
+     * the specified live {@code Fragment}s.
+     */
+    static PagerAdapterState create(SavedStateStore store, long[] fragmentIds,
+                                    int[] fragmentIndices, boolean compressed) {
+        final int statesCount = store.size();
+        int marshalledCount = 0;
+        for (int i=0; i<statesCount; i++) {
+            if (store.dataAt(i) != null) {
+                marshalledCount++;
+            }
+        }
+
+        long[] stateIds = new long[marshalledCount];
+        int[] stateLengths = new int[marshalledCount];
+        byte[][] states = new byte[marshalledCount][];
+        byte[][] compressedStates = (compressed ? new byte[marshalledCount][] : null);
+        final int parcelableCount = statesCount - marshalledCount;
+        long[] parcelableStateIds = new long[parcelableCount];
+        Fragment.SavedState[] parcelableStates = new Fragment.SavedState[parcelableCount];
+        for (int i=0, m=0, p=0; i<statesCount; i++) {
+            byte[] data = store.dataAt(i);
+            if (data != null) {
+                stateIds[m] = store.keyAt(i);
+                stateLengths[m] = data.length;
+                states[m] = data;
+                if (compressed) {
+                    compressedStates[m] = store.compressedDataAt(i);
+                }
+                m++;
+            } else {
+                parcelableStateIds[p] = store.keyAt(i);
+                parcelableStates[p] = store.valueAt(i);
+                p++;
+            }
+        }
+
+        return new PagerAdapterState(stateIds, stateLengths, states, compressedStates,
+            parcelableStateIds, parcelableStates, fragmentIds, fragmentIndices);
+    }
+
+    /**
+     * Puts the saved states held by this state into the specified store, along with their
+     * compressed forms, so that they are not compressed again by the next save.
+     */
+    void restoreStates(SavedStateStore store) {
+        int unreadableCount = 0;
+        for (int i=0; i<mStateIds.length; i++) {
+            if (mStates[i] != null) {
+                store.putMarshalled(mStateIds[i], mStates[i],
+                    (mCompressed ? mCompressedStates[i] : null));
+            } else {
+                unreadableCount++;
+            }
+        }
+        if (unreadableCount > 0) {
+            Log.w(TAG, "Dropping " + unreadableCount + " unreadable saved states");
+        }
+        for (int i=0; i<mParcelableStateIds.length; i++) {
+            store.put(mParcelableStateIds[i], mParcelableStates[i]);
+        }
+    }
+
+    /**
+     * Returns a copy of this state that shares its saved page states, but holds the specified live
+     * {@code Fragment}s instead.
+     */
+    PagerAdapterState withFragments(long[] fragmentIds, int[] fragmentIndices) {
+        return new PagerAdapterState(mStateIds, mStateLengths, mStates, mCompressedStates,
+            mParcelableStateIds, mParcelableStates, fragmentIds, fragmentIndices);
+    }
+
+    /**
+     * Returns a copy of this state that additionally holds the specified saved page states, which
+     * are stored as regular {@code Parcelable}s.
+     */
+    PagerAdapterState withStates(long[] stateIds, Fragment.SavedState[] states) {
+        if (stateIds.length == 0) return this;
+
+        final int count = mParcelableStateIds.length;
+        long[] parcelableStateIds = new long[count + stateIds.length];
+        Fragment.SavedState[] parcelableStates = new Fragment.SavedState[count + states.length];
+        System.arraycopy(mParcelableStateIds, 0, parcelableStateIds, 0, count);
+        System.arraycopy(stateIds, 0, parcelableStateIds, count, stateIds.length);
+        System.arraycopy(mParcelableStates, 0, parcelableStates, 0, count);
+        System.arraycopy(states, 0, parcelableStates, count, states.length);
+        return new PagerAdapterState(mStateIds, mStateLengths, mStates, mCompressedStates,
+            parcelableStateIds, parcelableStates, mFragmentIds, mFragmentIndices);
+    }
+
+    // *********************************************************************************************
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    // *********************************************************************************************
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeInt(mCompressed ? FLAG_COMPRESSED : 0);
+        out.writeLongArray(mStateIds);
+        out.writeIntArray(mStateLengths);
+        for (int i=0; i<mStateIds.length; i++) {
+            out.writeByteArray(mCompressed ? mCompressedStates[i] : mStates[i]);
+        }
+        out.writeLongArray(mParcelableStateIds);
+        out.writeParcelableArray(mParcelableStates, flags);
+        out.writeLongArray(mFragmentIds);
+        out.writeIntArray(mFragmentIndices);
+    }
+
+    // *********************************************************************************************
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the specified data into the specified amount of bytes, or returns {@code null}
+     * if it is malformed.
+     */
+    static byte[] inflate(byte[] data, int length) {
+        if (data == null) return null;
+
+        byte[] result = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int offset = 0;
+            while ((offset < length) && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if ((count == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated saved state");
+                }
+                offset += count;
+            }
+            if (offset < length) {
+                throw new DataFormatException("Truncated saved state");
+            }
+            return result;
+        } catch (DataFormatException ex) {
+            Log.w(TAG, "Failed to decompress saved state", ex);
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    public static final Creator<PagerAdapterState> CREATOR = ParcelableCompat.newCreator(
+        new ParcelableCompatCreatorCallbacks<PagerAdapterState>() {
+            @Override
+            public PagerAdapterState createFromParcel(Parcel in, ClassLoader loader) {
+                return new PagerAdapterState(in, ((loader != null)
+                    ? loader : PagerAdapterState.class.getClassLoader()));
+            }
+
+            @Override
+            public PagerAdapterState[] newArray(int size) {
+                return new PagerAdapterState[size];
+            }
+        });
+}
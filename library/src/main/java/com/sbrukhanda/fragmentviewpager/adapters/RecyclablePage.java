@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+/**
+ * The interface for {@code Fragment} pages that can be reused for other positions once they were
+ * removed from their pager, see {@link FragmentStatePagerAdapter#setFragmentPoolSize(int)}. <p />
+ *
+ * A recyclable {@code Fragment} must read everything that depends on its position from its
+ * arguments in its lifecycle methods (e.g. {@code onCreate()} or {@code onCreateView()}), as its
+ * arguments are rebound to the new position before it is added again.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public interface RecyclablePage
+{
+    /**
+     * Called when the {@code Fragment} is taken out of the pool in order to be reused for another
+     * position, before its arguments are rebound. Implementations should reset all fields that
+     * depend on the previous position.
+     */
+    void onRecycle();
+}
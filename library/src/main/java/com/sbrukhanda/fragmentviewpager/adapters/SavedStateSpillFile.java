@@ -0,0 +1,614 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An append-only segment file that holds marshalled {@code Fragment.SavedState}s which were
+ * evicted from a {@link SavedStateStore}. <p />
+ *
+ * The segment index is only ever accessed from the main thread, while all file I/O, including
+ * the creation of the file and the deletion of stale files, is performed on a shared background
+ * thread. Segments are loaded in the background ahead of time, and taking back a segment that is
+ * not loaded yet only waits for its running load. Once the space of removed segments outweighs the
+ * live ones, the live segments are moved to the start of the file and the file is truncated, thus
+ * its size stays proportional to the states it holds. <p />
+ *
+ * Spilled states live for the duration of the process only. The name of each file contains the
+ * identifier of the process that created it, so that files left over by processes which are no
+ * longer running are deleted once the first spill file is created, while the files of other
+ * running processes of the same application are left alone.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class SavedStateSpillFile
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String  TAG   = SavedStateSpillFile.class.getSimpleName();
+    private static final boolean DEBUG = true;
+
+    /**
+     * The prefix of the spill files' names.
+     */
+    static final String FILE_PREFIX = "fragmentviewpager-states-";
+
+    /**
+     * The amount of bytes of removed segments that is tolerated regardless of the size of the live
+     * segments, before the file is compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 64 * 1024;
+
+    private static final Comparator<Segment> OFFSET_ORDER = new Comparator<Segment>() {
+        @Override
+        public int compare(Segment lhs, Segment rhs) {
+            return ((lhs.mOffset < rhs.mOffset) ? -1 : ((lhs.mOffset == rhs.mOffset) ? 0 : 1));
+        }
+    };
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    /**
+     * The thread on which all spill files perform their I/O.
+     */
+    private static ExecutorService sExecutor;
+
+    /**
+     * Indicates whether spill files left over by previous processes were already deleted. Accessed
+     * from the I/O thread only.
+     */
+    private static boolean sStaleFilesDeleted = false;
+
+    private final Context mContext;
+    private final String  mName;
+    private final Handler mMainHandler;
+
+    /**
+     * The file inside the cache directory, or {@code null} until it is first opened. Guarded by
+     * this object's lock.
+     */
+    private File mFile;
+
+    /**
+     * The open file, or {@code null} if it was closed. Guarded by this object's lock, which is held
+     * for the duration of each I/O operation.
+     */
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel      mChannel;
+
+    private final LongSparseArray<Segment> mSegments   = new LongSparseArray<Segment>();
+    private final LongSparseArray<byte[]>  mPrefetched = new LongSparseArray<byte[]>();
+
+    /**
+     * The offset at which the next segment will be appended.
+     */
+    private long mEnd = 0;
+
+    /**
+     * The amount of bytes occupied by the live segments.
+     */
+    private long mLiveBytes = 0;
+
+    private OnStateLoadedListener mOnStateLoadedListener;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    /**
+     * Creates a new spill file for the specified owner inside the cache directory of the specified
+     * {@code Context}. The file is only created on the disk once the first state is written to it.
+     */
+    static SavedStateSpillFile create(Context context, Object owner) {
+        String name = FILE_PREFIX + Process.myPid() + "-" + System.identityHashCode(owner) + "-"
+            + SystemClock.uptimeMillis();
+        return new SavedStateSpillFile(context.getApplicationContext(), name);
+    }
+
+    /**
+     * Deletes the spill files inside the specified directory that were created by processes which
+     * are no longer running. Files carrying the identifier of this process were left over by a
+     * previous process with the same identifier, as this process did not create any file yet.
+     */
+    private static void deleteStaleFiles(Context context, File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        SparseBooleanArray runningPids = null;
+        ActivityManager activityManager =
+            (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+            ((activityManager != null) ? activityManager.getRunningAppProcesses() : null);
+        if (processes != null) {
+            runningPids = new SparseBooleanArray(processes.size());
+            for (ActivityManager.RunningAppProcessInfo process : processes) {
+                runningPids.put(process.pid, true);
+            }
+        }
+
+        final int myPid = Process.myPid();
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(FILE_PREFIX)) continue;
+
+            int pid = parsePid(name);
+            boolean stale = ((pid == myPid) || (pid < 0)
+                || ((runningPids != null) && !runningPids.get(pid)));
+            if (stale && !file.delete()) {
+                Log.w(TAG, "Failed to delete stale " + file);
+            }
+        }
+    }
+
+    /**
+     * Returns the identifier of the process that created the spill file with the specified name,
+     * or {@code -1} if the name does not contain one.
+     */
+    private static int parsePid(String name) {
+        int start = FILE_PREFIX.length();
+        int end = name.indexOf('-', start);
+        if (end < 0) return -1;
+
+        try {
+            return Integer.parseInt(name.substring(start, end));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    // *********************************************************************************************
+    private SavedStateSpillFile(Context context, String name) {
+        mContext = context;
+        mName = name;
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    // *********************************************************************************************
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Appends the specified marshalled state under the specified key. The data is written
+     * asynchronously, but is available for {@link #take(long)} immediately.
+     */
+    void write(long key, byte[] data) {
+        remove(key);
+
+        final Segment segment = new Segment(mEnd, data);
+        mSegments.put(key, segment);
+        mEnd += data.length;
+        mLiveBytes += data.length;
+
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (SavedStateSpillFile.this) {
+                        if (mChannel == null) {
+                            open();
+                        }
+                        writeFully(segment.mOffset, segment.mPendingData);
+                    }
+                } catch (IOException ex) {
+                    Log.w(TAG, "Failed to spill state to " + mName, ex);
+                    segment.mFailed = true;
+                }
+                // The data is dropped on the main thread, so that a state which was seen loaded
+                // there can always be taken without waiting
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        segment.mPendingData = null;
+                    }
+                });
+            }
+        });
+    }
+
+    // *********************************************************************************************
+    void setOnStateLoadedListener(OnStateLoadedListener listener) {
+        mOnStateLoadedListener = listener;
+    }
+
+    /**
+     * @return {@code True} if the state stored under the specified key can be taken without
+     * waiting for the disk, or if there is no such state, else {@code false}.
+     */
+    boolean isLoaded(long key) {
+        Segment segment = mSegments.get(key);
+        return ((segment == null) || segment.mFailed || (segment.mPendingData != null)
+            || (mPrefetched.get(key) != null));
+    }
+
+    /**
+     * Starts loading the state stored under the specified key in the background, if it is not
+     * already available in memory. The listener is notified once the load completes.
+     */
+    void prefetch(final long key) {
+        final Segment segment = mSegments.get(key);
+        if ((segment == null) || (segment.mLoad != null) || isLoaded(key)) return;
+
+        segment.mLoad = getExecutor().submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                final byte[] data = read(segment);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        segment.mLoad = null;
+                        // Discard the data if the segment was taken or moved in the meantime
+                        if ((data != null) && (mSegments.get(key) == segment)) {
+                            mPrefetched.put(key, data);
+                        }
+                        if (mOnStateLoadedListener != null) {
+                            mOnStateLoadedListener.onStateLoaded(key);
+                        }
+                    }
+                });
+                return data;
+            }
+        });
+    }
+
+    /**
+     * Removes and returns the state stored under the specified key. Loaded states are returned
+     * immediately, else the state is loaded in the background, and the calling thread waits for
+     * the load to complete. Thus, callers on the main thread should only take states that are
+     * loaded, or whose load was started by {@link #prefetch(long)} ahead of time.
+     */
+    byte[] take(long key) {
+        Segment segment = mSegments.get(key);
+        if (segment == null) return null;
+
+        byte[] data = mPrefetched.get(key);
+        if (data == null) {
+            data = segment.mPendingData;
+        }
+        if ((data == null) && !segment.mFailed) {
+            if (DEBUG) Log.v(TAG, "Waiting for state #" + key + " to be loaded");
+            prefetch(key);
+            data = await(segment.mLoad);
+        }
+        remove(key);
+        return data;
+    }
+
+    // *********************************************************************************************
+    private static byte[] await(Future<byte[]> load) {
+        if (load == null) return null;
+
+        try {
+            return load.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            Log.w(TAG, "Failed to load spilled state", ex);
+            return null;
+        }
+    }
+
+    // *********************************************************************************************
+    void remove(long key) {
+        Segment segment = mSegments.get(key);
+        if (segment == null) return;
+
+        mSegments.remove(key);
+        mPrefetched.remove(key);
+        mLiveBytes -= segment.mLength;
+        reclaim();
+    }
+
+    /**
+     * Removes all states whose keys are within {@code [start, end)}.
+     */
+    void removeRange(long start, long end) {
+        for (int i=mSegments.size()-1; (i>=0) && (mSegments.keyAt(i) >= start); i--) {
+            if (mSegments.keyAt(i) < end) {
+                mLiveBytes -= mSegments.valueAt(i).mLength;
+                mSegments.removeAt(i);
+            }
+        }
+        LongSparseArrays.removeRange(mPrefetched, start, end);
+        reclaim();
+    }
+
+    /**
+     * Adds the specified delta to all keys that are greater than or equal to {@code start}.
+     */
+    void shift(long start, long delta) {
+        LongSparseArrays.shift(mSegments, start, delta);
+        LongSparseArrays.shift(mPrefetched, start, delta);
+    }
+
+    /**
+     * Returns the number of spilled states.
+     */
+    int size() {
+        return mSegments.size();
+    }
+
+    // *********************************************************************************************
+    long keyAt(int index) {
+        return mSegments.keyAt(index);
+    }
+
+    // *********************************************************************************************
+    void clear() {
+        mSegments.clear();
+        mPrefetched.clear();
+        mEnd = 0;
+        mLiveBytes = 0;
+    }
+
+    /**
+     * Clears this file's segments, closes it and deletes it from the disk. The file is recreated
+     * once a state is written to it again.
+     */
+    void close() {
+        clear();
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SavedStateSpillFile.this) {
+                    if (mRandomAccessFile != null) {
+                        try {
+                            mRandomAccessFile.close();
+                        } catch (IOException ex) {
+                            Log.w(TAG, "Failed to close " + mFile, ex);
+                        }
+                        mRandomAccessFile = null;
+                        mChannel = null;
+                    }
+                    if ((mFile != null) && mFile.exists() && !mFile.delete()) {
+                        Log.w(TAG, "Failed to delete " + mFile);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reclaims the space of the removed segments, either by starting over if no live segments are
+     * left, or by compacting the file once the removed segments outweigh the live ones.
+     */
+    private void reclaim() {
+        final long deadBytes = mEnd - mLiveBytes;
+        if (deadBytes > Math.max(mLiveBytes, COMPACTION_THRESHOLD)) {
+            compact();
+        } else if (mSegments.size() == 0) {
+            mEnd = 0;
+        }
+    }
+
+    /**
+     * Moves the live segments to the start of the file in the background, keeping their order, and
+     * truncates it. Segments keep their old offsets until they are moved, and segments appended
+     * meanwhile are written after the move, since all I/O runs on a single thread.
+     */
+    private void compact() {
+        final Segment[] segments = new Segment[mSegments.size()];
+        for (int i=0; i<segments.length; i++) {
+            segments[i] = mSegments.valueAt(i);
+        }
+        if (DEBUG) Log.v(TAG, "Compacting " + mName + ": " + mEnd + " -> " + mLiveBytes
+            + " bytes");
+        mEnd = mLiveBytes;
+
+        final long length = mLiveBytes;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                // Segments are moved towards the start in ascending order, thus each of them is
+                // only ever moved into space that was already vacated
+                Arrays.sort(segments, OFFSET_ORDER);
+                long offset = 0;
+                for (Segment segment : segments) {
+                    moveSegment(segment, offset);
+                    offset += segment.mLength;
+                }
+                synchronized (SavedStateSpillFile.this) {
+                    if (mChannel == null) return;
+                    try {
+                        mChannel.truncate(length);
+                    } catch (IOException ex) {
+                        Log.w(TAG, "Failed to truncate " + mFile, ex);
+                    }
+                }
+            }
+        });
+    }
+
+    // *********************************************************************************************
+    private synchronized void moveSegment(Segment segment, long offset) {
+        if ((mChannel == null) || segment.mFailed || (segment.mOffset == offset)) return;
+
+        try {
+            byte[] data = new byte[segment.mLength];
+            readFully(segment.mOffset, data);
+            writeFully(offset, data);
+            segment.mOffset = offset;
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to move spilled state inside " + mName, ex);
+            segment.mFailed = true;
+        }
+    }
+
+    // *********************************************************************************************
+    private synchronized byte[] read(Segment segment) {
+        byte[] pendingData = segment.mPendingData;
+        if (pendingData != null) return pendingData;
+        if (segment.mFailed || (mChannel == null)) return null;
+
+        byte[] data = new byte[segment.mLength];
+        try {
+            readFully(segment.mOffset, data);
+            return data;
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to read spilled state from " + mName, ex);
+            segment.mFailed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Opens the file on the I/O thread, creating it inside the cache directory, and deleting the
+     * stale files of previous processes the first time a spill file is created.
+     */
+    private void open() throws IOException {
+        if (mFile == null) {
+            File directory = mContext.getCacheDir();
+            if (!sStaleFilesDeleted) {
+                sStaleFilesDeleted = true;
+                deleteStaleFiles(mContext, directory);
+            }
+            mFile = new File(directory, mName);
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+    }
+
+    // *********************************************************************************************
+    private void readFully(long offset, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int count = mChannel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += count;
+        }
+    }
+
+    // *********************************************************************************************
+    private void writeFully(long offset, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += mChannel.write(buffer, position);
+        }
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * The interface for receiving notifications about spilled states that were loaded in the
+     * background.
+     */
+    interface OnStateLoadedListener
+    {
+        /**
+         * Called on the main thread once a load started by {@link #prefetch(long)} completed. The
+         * state stored under the specified key can then be taken without waiting, unless it was
+         * moved to another key in the meantime, see {@link #isLoaded(long)}.
+         */
+        void onStateLoaded(long key);
+    }
+
+    /**
+     * The location of a single state inside the file.
+     */
+    private static final class Segment
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        /**
+         * The offset of this segment inside the file, which changes once the file is compacted.
+         * Written on the I/O thread while holding the file's lock.
+         */
+        private long      mOffset;
+        private final int mLength;
+
+        /**
+         * The data of this segment until it has been written to the file. Cleared on the main
+         * thread only.
+         */
+        private volatile byte[]  mPendingData;
+        private volatile boolean mFailed;
+
+        /**
+         * The running load of this segment, or {@code null} if it is not being loaded. Accessed
+         * from the main thread only.
+         */
+        private Future<byte[]> mLoad;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        Segment(long offset, byte[] data) {
+            mOffset = offset;
+            mLength = data.length;
+            mPendingData = data;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+/**
+ * A byte-budgeted store of {@code Fragment.SavedState}s, keyed by item identifier. <p />
+ *
+ * States are kept in their marshalled form, which allows their exact size to be accounted for.
+ * Whenever the total size exceeds the configured budget, the least recently visited states are
+ * evicted until the store fits into its budget again. Evicted states are either spilled to a
+ * {@link SavedStateSpillFile}, if one was provided, or dropped.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class SavedStateStore
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String  TAG   = SavedStateStore.class.getSimpleName();
+    private static final boolean DEBUG = true;
+
+    /**
+     * The budget used when none was specified, i.e. states are never evicted.
+     */
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final LongSparseArray<Entry> mEntries = new LongSparseArray<Entry>();
+
+    /**
+     * The least recently visited entry, i.e. the first to be evicted.
+     */
+    private Entry mHead;
+
+    /**
+     * The most recently visited entry, i.e. the last to be evicted.
+     */
+    private Entry mTail;
+
+    private int mMaxBytes   = UNBOUNDED;
+    private int mTotalBytes = 0;
+
+    /**
+     * The number of times the set of in-memory states was modified.
+     */
+    private int mModCount = 0;
+
+    private OnSavedStateEvictedListener mOnSavedStateEvictedListener;
+    private SavedStateSpillFile         mSpillFile;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    // *********************************************************************************************
+    void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    // *********************************************************************************************
+    int getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Returns the number of times the set of in-memory states was modified, which allows callers
+     * to detect whether anything changed since they last looked.
+     */
+    int getModCount() {
+        return mModCount;
+    }
+
+    // *********************************************************************************************
+    void setOnSavedStateEvictedListener(OnSavedStateEvictedListener listener) {
+        mOnSavedStateEvictedListener = listener;
+    }
+
+    // *********************************************************************************************
+    SavedStateSpillFile getSpillFile() {
+        return mSpillFile;
+    }
+
+    /**
+     * Sets the file to which evicted states are spilled, or {@code null} to drop them instead. The
+     * states of a previously set file are dropped, see {@link #releaseSpillFile()}.
+     */
+    void setSpillFile(SavedStateSpillFile spillFile) {
+        releaseSpillFile();
+        mSpillFile = spillFile;
+    }
+
+    /**
+     * Drops all spilled states, notifying the listener about each of them, and closes the spill
+     * file. The file is reopened once states are spilled again.
+     */
+    void releaseSpillFile() {
+        if (mSpillFile == null) return;
+
+        long[] keys = new long[mSpillFile.size()];
+        for (int i=0; i<keys.length; i++) {
+            keys[i] = mSpillFile.keyAt(i);
+        }
+        mSpillFile.close();
+        if (mOnSavedStateEvictedListener != null) {
+            for (long key : keys) {
+                mOnSavedStateEvictedListener.onSavedStateEvicted(key);
+            }
+        }
+    }
+
+    /**
+     * @return {@code True} if the state stored under the specified key can be taken without
+     * waiting for the disk, or if there is no such state, else {@code false}.
+     */
+    boolean isLoaded(long key) {
+        return ((mSpillFile == null) || (mEntries.get(key) != null) || mSpillFile.isLoaded(key));
+    }
+
+    /**
+     * Starts loading the state stored under the specified key in the background if it was spilled.
+     */
+    void prefetch(long key) {
+        if (mSpillFile != null) {
+            mSpillFile.prefetch(key);
+        }
+    }
+
+    /**
+     * Returns the number of states kept in memory. Spilled states are not accounted for.
+     */
+    int size() {
+        return mEntries.size();
+    }
+
+    // *********************************************************************************************
+    long keyAt(int index) {
+        return mEntries.keyAt(index);
+    }
+
+    // *********************************************************************************************
+    Fragment.SavedState valueAt(int index) {
+        return mEntries.valueAt(index).getState();
+    }
+
+    /**
+     * Returns the marshalled state at the specified index, or {@code null} if the state could not
+     * be marshalled, in which case it is available through {@link #valueAt(int)} only.
+     */
+    byte[] dataAt(int index) {
+        return mEntries.valueAt(index).mData;
+    }
+
+    /**
+     * Returns the compressed marshalled state at the specified index, or {@code null} if the state
+     * could not be marshalled. The state is compressed once and kept along with it.
+     */
+    byte[] compressedDataAt(int index) {
+        Entry entry = mEntries.valueAt(index);
+        if ((entry.mCompressedData == null) && (entry.mData != null)) {
+            entry.mCompressedData = PagerAdapterState.deflate(entry.mData);
+        }
+        return entry.mCompressedData;
+    }
+
+    /**
+     * Removes all states whose keys are within {@code [start, end)}.
+     */
+    void removeRange(long start, long end) {
+        for (int i=mEntries.size()-1; (i>=0) && (mEntries.keyAt(i) >= start); i--) {
+            long key = mEntries.keyAt(i);
+            if (key < end) {
+                remove(key);
+            }
+        }
+        if (mSpillFile != null) {
+            mSpillFile.removeRange(start, end);
+        }
+    }
+
+    /**
+     * Adds the specified delta to all keys that are greater than or equal to {@code start}, while
+     * retaining the visiting order. The shifted keys must not collide with the keys that are not
+     * shifted.
+     */
+    void shift(long start, long delta) {
+        LongSparseArrays.shift(mEntries, start, delta);
+        for (int i=mEntries.size()-1; (i>=0) && (mEntries.keyAt(i) >= start + delta); i--) {
+            mEntries.valueAt(i).mKey = mEntries.keyAt(i);
+        }
+        mModCount++;
+        if (mSpillFile != null) {
+            mSpillFile.shift(start, delta);
+        }
+    }
+
+    /**
+     * Stores the specified state as the most recently visited one and evicts the least recently
+     * visited states if the budget is exceeded.
+     */
+    void put(long key, Fragment.SavedState state) {
+        remove(key);
+        if (state == null) return;
+
+        add(new Entry(key, state));
+    }
+
+    /**
+     * Stores the specified marshalled state as the most recently visited one and evicts the least
+     * recently visited states if the budget is exceeded. The compressed form of the state may be
+     * specified if it is already known, else {@code null}.
+     */
+    void putMarshalled(long key, byte[] data, byte[] compressedData) {
+        remove(key);
+        if (data == null) return;
+
+        add(new Entry(key, data, compressedData));
+    }
+
+    /**
+     * Removes and returns the state stored under the specified key, if any. Waits for the state
+     * to be loaded if it was spilled and is not loaded yet, see {@link #isLoaded(long)}.
+     */
+    Fragment.SavedState take(long key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            byte[] data = ((mSpillFile != null) ? mSpillFile.take(key) : null);
+            return ((data != null) ? unmarshall(data) : null);
+        }
+
+        remove(key);
+        return entry.getState();
+    }
+
+    // *********************************************************************************************
+    void remove(long key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            mEntries.remove(key);
+            mTotalBytes -= entry.mBytes;
+            unlink(entry);
+            mModCount++;
+        }
+        if (mSpillFile != null) {
+            mSpillFile.remove(key);
+        }
+    }
+
+    // *********************************************************************************************
+    void clear() {
+        if (mSpillFile != null) {
+            mSpillFile.clear();
+        }
+        mEntries.clear();
+        mHead = null;
+        mTail = null;
+        mTotalBytes = 0;
+        mModCount++;
+    }
+
+    // *********************************************************************************************
+    private void add(Entry entry) {
+        mEntries.put(entry.mKey, entry);
+        mTotalBytes += entry.mBytes;
+        linkLast(entry);
+        mModCount++;
+
+        trimToSize();
+    }
+
+    // *********************************************************************************************
+    private void trimToSize() {
+        while ((mTotalBytes > mMaxBytes) && (mHead != null)) {
+            Entry entry = mHead;
+            if (DEBUG) Log.v(TAG, "Evicting state #" + entry.mKey + ": " + entry.mBytes + " bytes");
+            remove(entry.mKey);
+            if ((mSpillFile != null) && (entry.mData != null)) {
+                mSpillFile.write(entry.mKey, entry.mData);
+            } else if (mOnSavedStateEvictedListener != null) {
+                mOnSavedStateEvictedListener.onSavedStateEvicted(entry.mKey);
+            }
+        }
+    }
+
+    // *********************************************************************************************
+    private static Fragment.SavedState unmarshall(byte[] data) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return Fragment.SavedState.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    // *********************************************************************************************
+    private void linkLast(Entry entry) {
+        entry.mPrevious = mTail;
+        entry.mNext = null;
+        if (mTail != null) {
+            mTail.mNext = entry;
+        } else {
+            mHead = entry;
+        }
+        mTail = entry;
+    }
+
+    // *********************************************************************************************
+    private void unlink(Entry entry) {
+        if (entry.mPrevious != null) {
+            entry.mPrevious.mNext = entry.mNext;
+        } else {
+            mHead = entry.mNext;
+        }
+        if (entry.mNext != null) {
+            entry.mNext.mPrevious = entry.mPrevious;
+        } else {
+            mTail = entry.mPrevious;
+        }
+        entry.mPrevious = null;
+        entry.mNext = null;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * A single stored state along with its position in the visiting order.
+     */
+    private static final class Entry
+    {
+        // =========================================================================================
+        // Fields
+        // =========================================================================================
+
+        private long mKey;
+
+        /**
+         * The marshalled state, or {@code null} if the state could not be marshalled (e.g. it
+         * contains active objects), in which case {@link #mState} holds it instead.
+         */
+        private final byte[]              mData;
+        private final Fragment.SavedState mState;
+        private final int                 mBytes;
+
+        /**
+         * The compressed {@link #mData}, or {@code null} if it was not needed yet. Not accounted
+         * for by the budget, as it is dropped along with the entry.
+         */
+        private byte[] mCompressedData;
+
+        private Entry mPrevious;
+        private Entry mNext;
+
+
+        // =========================================================================================
+        // Constructors & Methods
+        // =========================================================================================
+
+        // *****************************************************************************************
+        Entry(long key, Fragment.SavedState state) {
+            mKey = key;
+
+            byte[] data = null;
+            int bytes;
+            Parcel parcel = Parcel.obtain();
+            try {
+                state.writeToParcel(parcel, 0);
+                bytes = parcel.dataSize();
+                data = parcel.marshall();
+            } catch (RuntimeException ex) {
+                bytes = parcel.dataSize();
+            } finally {
+                parcel.recycle();
+            }
+
+            mData = data;
+            mState = ((data != null) ? null : state);
+            mBytes = bytes;
+        }
+
+        // *****************************************************************************************
+        Entry(long key, byte[] data, byte[] compressedData) {
+            mKey = key;
+            mData = data;
+            mState = null;
+            mBytes = data.length;
+            mCompressedData = compressedData;
+        }
+
+        // *****************************************************************************************
+        Fragment.SavedState getState() {
+            return ((mData != null) ? unmarshall(mData) : mState);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.sbrukhanda.fragmentviewpager.adapters.FragmentStatePagerAdapter;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests that the pages created by the transactions batched across nested
+ * {@link FragmentViewPager}s are measured within the measure pass that created them, and that
+ * settling on pages notifies them about their visibility without allocating.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FragmentViewPagerTest
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final int PAGER_ID       = 1;
+    private static final int CHILD_PAGER_ID = 2;
+    private static final int PAGER_SIZE     = 480;
+
+    /**
+     * The number of back and forth scrolls before and while allocations are counted. The first
+     * ones initialize the lazily created state of the pagers and of the test environment.
+     */
+    private static final int WARM_UP_SCROLLS = 10;
+    private static final int SCROLLS         = 100;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private ScrollablePager mPager;
+    private PageAdapter     mAdapter;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        FragmentActivity activity = Robolectric.buildActivity(FragmentActivity.class).create()
+            .start().resume().visible().get();
+        // Fragment transactions must only be executed by the pagers, not by posted commits
+        Robolectric.getForegroundThreadScheduler().pause();
+
+        mPager = new ScrollablePager(activity);
+        mPager.setId(PAGER_ID);
+        activity.setContentView(mPager);
+        mAdapter = new PageAdapter(activity.getSupportFragmentManager(), true);
+        mPager.setAdapter(mAdapter);
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void firstPopulatedPagesAreMeasured() {
+        layoutPager();
+
+        for (int i=0; i<2; i++) {
+            View page = assertPageMeasured(mAdapter.getFragment(i));
+            PageAdapter childAdapter = (PageAdapter) ((FragmentViewPager) page).getAdapter();
+            assertPageMeasured(childAdapter.getFragment(0));
+            assertPageMeasured(childAdapter.getFragment(1));
+        }
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void settlingOnPagesDoesNotAllocate() {
+        layoutPager();
+        mPager.notifyPagerVisible();
+        mPager.scroll(0, 0);
+        NestedPageFragment first = (NestedPageFragment) mAdapter.getFragment(0);
+        NestedPageFragment second = (NestedPageFragment) mAdapter.getFragment(1);
+        assertEquals(1, first.mVisibleCount);
+
+        scrollBackAndForth(WARM_UP_SCROLLS);
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+        start = threads.getThreadAllocatedBytes(threadId);
+        scrollBackAndForth(SCROLLS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+
+        assertEquals(0, allocated);
+        assertEquals(1 + WARM_UP_SCROLLS + SCROLLS, first.mVisibleCount);
+        assertEquals(WARM_UP_SCROLLS + SCROLLS, second.mVisibleCount);
+        assertEquals(WARM_UP_SCROLLS + SCROLLS, second.mInvisibleCount);
+    }
+
+    /**
+     * Drags the pager to the second page and back the specified number of times, settling on
+     * each page, like the scroll callbacks of the frames of a swipe do.
+     */
+    private void scrollBackAndForth(int count) {
+        for (int i=0; i<count; i++) {
+            mPager.scroll(0, 0.5f);
+            mPager.scroll(0, 0.9f);
+            mPager.scroll(1, 0);
+            mPager.scroll(0, 0.5f);
+            mPager.scroll(0, 0.1f);
+            mPager.scroll(0, 0);
+        }
+    }
+
+    // *********************************************************************************************
+    private void layoutPager() {
+        int spec = View.MeasureSpec.makeMeasureSpec(PAGER_SIZE, View.MeasureSpec.EXACTLY);
+        mPager.measure(spec, spec);
+        mPager.layout(0, 0, PAGER_SIZE, PAGER_SIZE);
+    }
+
+    // *********************************************************************************************
+    private static View assertPageMeasured(Fragment page) {
+        assertNotNull(page);
+        View view = page.getView();
+        assertNotNull(view);
+        assertEquals(PAGER_SIZE, view.getWidth());
+        assertEquals(PAGER_SIZE, view.getHeight());
+        return view;
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * A {@code FragmentViewPager} whose scroll callbacks can be driven directly.
+     */
+    private static final class ScrollablePager extends FragmentViewPager
+    {
+        // *****************************************************************************************
+        ScrollablePager(Context context) {
+            super(context);
+        }
+
+        // *****************************************************************************************
+        void scroll(int position, float offset) {
+            onPageScrolled(position, offset, (int) (offset * PAGER_SIZE));
+        }
+    }
+
+    /**
+     * An adapter of either {@link NestedPageFragment}s or {@link PageFragment}s.
+     */
+    private static final class PageAdapter extends FragmentStatePagerAdapter
+    {
+        private final boolean mNested;
+
+        // *****************************************************************************************
+        PageAdapter(FragmentManager fm, boolean nested) {
+            super(fm);
+            mNested = nested;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public Fragment instantiateFragment(int position) {
+            return (mNested ? new NestedPageFragment() : new PageFragment());
+        }
+
+        // *****************************************************************************************
+        @Override
+        public int getCount() {
+            return 5;
+        }
+    }
+
+    /**
+     * A page hosting a nested {@code FragmentViewPager} of {@link PageFragment}s, which counts its
+     * visibility callbacks.
+     */
+    public static final class NestedPageFragment extends Fragment
+        implements FragmentVisibilityListener
+    {
+        int mVisibleCount;
+        int mInvisibleCount;
+
+        // *****************************************************************************************
+        @Override
+        public void onFragmentVisible() {
+            mVisibleCount++;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void onFragmentInvisible() {
+            mInvisibleCount++;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            FragmentViewPager pager = new FragmentViewPager(getActivity());
+            pager.setId(CHILD_PAGER_ID);
+            pager.setAdapter(new PageAdapter(getChildFragmentManager(), false));
+            return pager;
+        }
+    }
+
+    /**
+     * A page with an empty view.
+     */
+    public static final class PageFragment extends Fragment
+    {
+        // *****************************************************************************************
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            return new View(getActivity());
+        }
+    }
+}
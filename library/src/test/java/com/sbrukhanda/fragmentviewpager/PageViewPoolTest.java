@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the slots which {@link PageViewPool} reserves for views inflated in the background
+ * keep those views from being dropped.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PageViewPoolTest
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final int LAYOUT_ID = 1;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private PageViewPool mPool;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        mPool = new PageViewPool();
+        mPool.setMaxViews(LAYOUT_ID, 2);
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void reservesOnlyFreeSlots() {
+        mPool.put(createPooledView());
+
+        assertTrue(mPool.reserve(LAYOUT_ID));
+        assertFalse(mPool.reserve(LAYOUT_ID));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void reservedSlotsAreNotTakenByDestroyedPages() {
+        assertTrue(mPool.reserve(LAYOUT_ID));
+        assertTrue(mPool.reserve(LAYOUT_ID));
+        View destroyed = createPooledView();
+        mPool.put(destroyed);
+        View inflated = new View(RuntimeEnvironment.application);
+        mPool.offer(inflated, LAYOUT_ID);
+
+        assertSame(inflated, mPool.obtain(null, LAYOUT_ID, null));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void failedInflationReleasesItsSlot() {
+        assertTrue(mPool.reserve(LAYOUT_ID));
+        assertTrue(mPool.reserve(LAYOUT_ID));
+        mPool.offer(null, LAYOUT_ID);
+        View inflated = new View(RuntimeEnvironment.application);
+        mPool.offer(inflated, LAYOUT_ID);
+        View destroyed = createPooledView();
+        mPool.put(destroyed);
+
+        assertSame(destroyed, mPool.obtain(null, LAYOUT_ID, null));
+        assertSame(inflated, mPool.obtain(null, LAYOUT_ID, null));
+        assertTrue(mPool.reserve(LAYOUT_ID));
+    }
+
+    /**
+     * Creates a view of a destroyed page, as obtained from a {@code PageViewPool}.
+     */
+    private static View createPooledView() {
+        View view = new View(RuntimeEnvironment.application);
+        view.setTag(R.id.fragmentviewpager_page_layout, LAYOUT_ID);
+        return view;
+    }
+}
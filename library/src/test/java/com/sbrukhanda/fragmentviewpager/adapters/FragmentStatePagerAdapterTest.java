@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentStateAccess;
+import android.support.v4.view.ViewPager;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.sbrukhanda.fragmentviewpager.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ActivityController;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the page updates of {@link FragmentStatePagerAdapter} on item range changes, with item
+ * identifiers being positions, the reuse of pooled pages and saving while pages are pending.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FragmentStatePagerAdapterTest
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final int PAGER_ID     = 1;
+    private static final int PAGE_VIEW_ID = 2;
+    private static final int PAGER_SIZE   = 480;
+    private static final int ITEMS_COUNT  = 10;
+
+
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private ViewPager   mPager;
+    private PageAdapter mAdapter;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        ActivityController<FragmentActivity> controller =
+            Robolectric.buildActivity(FragmentActivity.class).create();
+        FragmentActivity activity = controller.get();
+        mPager = new ViewPager(activity);
+        mPager.setId(PAGER_ID);
+        activity.setContentView(mPager);
+        // The pager does not populate until it is attached to a window
+        controller.start().resume().visible();
+
+        mAdapter = new PageAdapter(activity.getSupportFragmentManager());
+        mAdapter.mCount = ITEMS_COUNT;
+        mPager.setAdapter(mAdapter);
+        layout();
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void insertedRangeMovesLivePages() {
+        Fragment first = mAdapter.getFragment(0);
+        Fragment second = mAdapter.getFragment(1);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        mAdapter.mCount++;
+        mAdapter.notifyItemRangeInserted(0, 1);
+        layout();
+
+        assertEquals(1, mPager.getCurrentItem());
+        assertSame(first, mAdapter.getFragment(1));
+        assertSame(second, mAdapter.getFragment(2));
+        assertTrue(first.isAdded());
+        assertTrue(second.isAdded());
+
+        Fragment inserted = mAdapter.getFragment(0);
+        assertNotNull(inserted);
+        assertNotSame(first, inserted);
+        assertTrue(inserted.isAdded());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void removedRangeDestroysItsPagesOnly() {
+        Fragment first = mAdapter.getFragment(0);
+        Fragment second = mAdapter.getFragment(1);
+
+        mAdapter.mCount--;
+        mAdapter.notifyItemRangeRemoved(0, 1);
+        layout();
+
+        assertEquals(0, mPager.getCurrentItem());
+        assertFalse(first.isAdded());
+        assertSame(second, mAdapter.getFragment(0));
+        assertTrue(second.isAdded());
+
+        Fragment next = mAdapter.getFragment(1);
+        assertNotNull(next);
+        assertNotSame(second, next);
+        assertTrue(next.isAdded());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void changedRangeRecreatesItsPagesOnly() {
+        Fragment first = mAdapter.getFragment(0);
+        Fragment second = mAdapter.getFragment(1);
+
+        mAdapter.notifyItemRangeChanged(1, 1);
+        layout();
+
+        assertSame(first, mAdapter.getFragment(0));
+        assertFalse(second.isAdded());
+
+        Fragment changed = mAdapter.getFragment(1);
+        assertNotNull(changed);
+        assertNotSame(second, changed);
+        assertTrue(changed.isAdded());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void pooledFragmentsAreReusedWithoutSavedState() {
+        mAdapter.setFragmentPoolSize(2);
+        PageFragment first = (PageFragment) mAdapter.getFragment(0);
+
+        mPager.setCurrentItem(5, false);
+        layout();
+        assertFalse(first.isAdded());
+        // The removed Fragment still holds the view state of its previous page
+        assertTrue(FragmentStateAccess.hasSavedState(first));
+
+        mPager.setCurrentItem(9, false);
+        layout();
+        assertTrue(first.mRecycled);
+        assertFalse(first.mRecycledWithSavedState);
+        assertTrue(first.isAdded());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void savingKeepsHeldPagesPending() {
+        FragmentManager fm = ((FragmentActivity) mPager.getContext()).getSupportFragmentManager();
+        PageAdapter adapter = new PageAdapter(fm);
+        adapter.mCount = ITEMS_COUNT;
+        adapter.restoreState(new PagerAdapterState(new long[0], new int[0], new byte[0][], null,
+            new long[] { 1 }, new Fragment.SavedState[] { SavedStates.create("b") }, new long[0],
+            new int[0]), null);
+        adapter.setOffscreenPagesHeld(true);
+        mPager.setAdapter(adapter);
+        layout();
+
+        Fragment primary = adapter.getFragment(0);
+        Fragment held = adapter.getFragment(1);
+        assertTrue(primary.isAdded());
+        assertFalse(held.isAdded());
+
+        PagerAdapterState state = (PagerAdapterState) adapter.saveState();
+        assertFalse(held.isAdded());
+        assertArrayEquals(new long[] { 0 }, state.mFragmentIds);
+        // The held page is recreated with its initial state once restored
+        assertArrayEquals(new long[] { 1 }, state.mParcelableStateIds);
+
+        PageAdapter restored = new PageAdapter(fm);
+        restored.restoreState(state, PagerAdapterState.class.getClassLoader());
+        assertSame(primary, restored.getFragment(0));
+
+        SavedStateStore states = new SavedStateStore();
+        state.restoreStates(states);
+        assertEquals("b", SavedStates.valueOf(states.take(1)));
+    }
+
+    // *********************************************************************************************
+    private void layout() {
+        int spec = View.MeasureSpec.makeMeasureSpec(PAGER_SIZE, View.MeasureSpec.EXACTLY);
+        mPager.measure(spec, spec);
+        mPager.layout(0, 0, PAGER_SIZE, PAGER_SIZE);
+    }
+
+
+    // =============================================================================================
+    // Inner classes
+    // =============================================================================================
+
+    /**
+     * An adapter of {@link PageFragment}s whose item identifiers are their positions.
+     */
+    private static final class PageAdapter extends FragmentStatePagerAdapter
+    {
+        private int mCount;
+
+        // *****************************************************************************************
+        PageAdapter(FragmentManager fm) {
+            super(fm);
+        }
+
+        // *****************************************************************************************
+        @Override
+        public Fragment instantiateFragment(int position) {
+            return new PageFragment();
+        }
+
+        // *****************************************************************************************
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public Class<? extends Fragment> getFragmentClass(int position) {
+            return PageFragment.class;
+        }
+    }
+
+    /**
+     * A recyclable page with an empty view, which records whether it still held any saved state
+     * when it was recycled.
+     */
+    public static final class PageFragment extends Fragment implements RecyclablePage
+    {
+        private boolean mRecycled;
+        private boolean mRecycledWithSavedState;
+
+        // *****************************************************************************************
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            View view = new View(getActivity());
+            // The view is given an identifier in order for its state to be saved
+            view.setId(PAGE_VIEW_ID);
+            return view;
+        }
+
+        // *****************************************************************************************
+        @Override
+        public void onRecycle() {
+            mRecycled = true;
+            mRecycledWithSavedState = FragmentStateAccess.hasSavedState(this);
+        }
+    }
+}
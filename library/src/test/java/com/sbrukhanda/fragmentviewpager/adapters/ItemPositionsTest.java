@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.view.PagerAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the resolution of item positions by stable identifiers of {@link ItemPositions}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public class ItemPositionsTest
+{
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private final List<Long> mItemIds = new ArrayList<Long>();
+
+    /**
+     * The number of item identifiers that were looked up.
+     */
+    private int mLookups;
+
+    private ItemPositions mPositions;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        mItemIds.addAll(Arrays.asList(10L, 11L, 12L, 13L));
+        mPositions = new ItemPositions(new ItemPositions.Source() {
+            @Override
+            public int getCount() {
+                return mItemIds.size();
+            }
+
+            @Override
+            public long getItemId(int position) {
+                mLookups++;
+                return mItemIds.get(position);
+            }
+        });
+        for (int i=0; i<mItemIds.size(); i++) {
+            mPositions.put(mItemIds.get(i), i);
+        }
+        mLookups = 0;
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void resolvesUnmovedItemsAtTheirLastPositions() {
+        mPositions.invalidate();
+
+        assertEquals(1, mPositions.resolve(11L));
+        assertEquals(3, mPositions.resolve(13L));
+        assertEquals(2, mLookups);
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void resolvesMovedAndRemovedItemsByIdentifier() {
+        mItemIds.remove(0);
+        mItemIds.add(1, 14L);
+        mPositions.invalidate();
+
+        assertEquals(0, mPositions.resolve(11L));
+        assertEquals(2, mPositions.resolve(12L));
+        assertEquals(3, mPositions.resolve(13L));
+        assertEquals(PagerAdapter.POSITION_NONE, mPositions.resolve(10L));
+        assertEquals(0, mPositions.getLastPosition(11L));
+        assertEquals(0, mPositions.getLastPosition(10L));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void buildsIndexOncePerDataSetChange() {
+        mItemIds.add(0, 14L);
+        mPositions.invalidate();
+
+        for (long itemId=10; itemId<14; itemId++) {
+            assertEquals((int) itemId - 9, mPositions.resolve(itemId));
+        }
+        // Each item was checked at its last position, and the index was built once
+        assertEquals(4 + mItemIds.size(), mLookups);
+
+        mLookups = 0;
+        for (long itemId=10; itemId<14; itemId++) {
+            mPositions.resolve(itemId);
+        }
+        assertEquals(4, mLookups);
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void appliesRangeChangesToPositions() {
+        assertEquals(1, ItemPositions.applyRange(ItemPositions.RANGE_INSERTED, 2, 3, 1));
+        assertEquals(5, ItemPositions.applyRange(ItemPositions.RANGE_INSERTED, 2, 3, 2));
+
+        assertEquals(1, ItemPositions.applyRange(ItemPositions.RANGE_REMOVED, 2, 3, 1));
+        assertEquals(PagerAdapter.POSITION_NONE,
+            ItemPositions.applyRange(ItemPositions.RANGE_REMOVED, 2, 3, 4));
+        assertEquals(2, ItemPositions.applyRange(ItemPositions.RANGE_REMOVED, 2, 3, 5));
+
+        assertEquals(PagerAdapter.POSITION_NONE,
+            ItemPositions.applyRange(ItemPositions.RANGE_CHANGED, 2, 3, 2));
+        assertEquals(5, ItemPositions.applyRange(ItemPositions.RANGE_CHANGED, 2, 3, 5));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.support.v4.util.LongSparseArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the re-keying functions of {@link LongSparseArrays}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+public class LongSparseArraysTest
+{
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private LongSparseArray<String> mArray;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        mArray = new LongSparseArray<String>();
+        mArray.put(1, "a");
+        mArray.put(3, "b");
+        mArray.put(4, "c");
+        mArray.put(7, "d");
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void removesKeysWithinRange() {
+        LongSparseArrays.removeRange(mArray, 3, 7);
+
+        assertKeys(1, 7);
+        assertEquals("d", mArray.get(7));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void shiftsKeysFromStartForward() {
+        LongSparseArrays.shift(mArray, 3, 2);
+
+        assertKeys(1, 5, 6, 9);
+        assertEquals("a", mArray.get(1));
+        assertEquals("b", mArray.get(5));
+        assertEquals("c", mArray.get(6));
+        assertEquals("d", mArray.get(9));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void shiftsKeysFromStartBackward() {
+        LongSparseArrays.removeRange(mArray, 2, 4);
+        LongSparseArrays.shift(mArray, 4, -2);
+
+        assertKeys(1, 2, 5);
+        assertEquals("c", mArray.get(2));
+        assertEquals("d", mArray.get(5));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void leavesKeysBeforeStartUntouched() {
+        LongSparseArrays.shift(mArray, 8, 5);
+        LongSparseArrays.removeRange(mArray, 8, 20);
+
+        assertKeys(1, 3, 4, 7);
+    }
+
+    // *********************************************************************************************
+    private void assertKeys(long... keys) {
+        assertEquals(keys.length, mArray.size());
+        for (int i=0; i<keys.length; i++) {
+            assertEquals(keys[i], mArray.keyAt(i));
+        }
+    }
+}
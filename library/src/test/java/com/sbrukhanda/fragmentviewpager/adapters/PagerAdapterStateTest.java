@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+
+import com.sbrukhanda.fragmentviewpager.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the round-trip of {@link PagerAdapterState} through a {@code Parcel}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PagerAdapterStateTest
+{
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Test
+    public void roundTripsUncompressedStates() {
+        SavedStateStore store = new SavedStateStore();
+        store.put(0, SavedStates.create("a"));
+        store.put(5, SavedStates.create("b"));
+
+        PagerAdapterState state = parcel(PagerAdapterState.create(store, new long[] { 2 },
+            new int[] { 7 }, false));
+        assertNull(state.mCompressedStates);
+        assertArrayEquals(new long[] { 2 }, state.mFragmentIds);
+        assertArrayEquals(new int[] { 7 }, state.mFragmentIndices);
+
+        SavedStateStore restored = new SavedStateStore();
+        state.restoreStates(restored);
+        assertEquals(2, restored.size());
+        assertEquals("a", SavedStates.valueOf(restored.take(0)));
+        assertEquals("b", SavedStates.valueOf(restored.take(5)));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void roundTripsUnmarshallableStatesAsParcelables() {
+        PagerAdapterState state = parcel(new PagerAdapterState(new long[0], new int[0],
+            new byte[0][], null, new long[] { 3 },
+            new Fragment.SavedState[] { SavedStates.create("c") }, new long[0], new int[0]));
+        assertEquals(0, state.mStateIds.length);
+        assertArrayEquals(new long[] { 3 }, state.mParcelableStateIds);
+
+        SavedStateStore restored = new SavedStateStore();
+        state.restoreStates(restored);
+        assertEquals(1, restored.size());
+        assertEquals("c", SavedStates.valueOf(restored.take(3)));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void roundTripsCompressedStates() {
+        SavedStateStore store = new SavedStateStore();
+        store.put(0, SavedStates.create("a"));
+        store.put(5, SavedStates.create("b"));
+
+        PagerAdapterState state = parcel(PagerAdapterState.create(store, new long[0],
+            new int[0], true));
+        assertEquals(2, state.mCompressedStates.length);
+
+        SavedStateStore restored = new SavedStateStore();
+        state.restoreStates(restored);
+        assertEquals(2, restored.size());
+        // The compressed states are kept, thus not compressed again by the next save
+        assertSame(state.mCompressedStates[0], restored.compressedDataAt(0));
+        assertSame(state.mCompressedStates[1], restored.compressedDataAt(1));
+        assertEquals("a", SavedStates.valueOf(restored.take(0)));
+        assertEquals("b", SavedStates.valueOf(restored.take(5)));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void dropsTruncatedCompressedStates() {
+        SavedStateStore store = new SavedStateStore();
+        store.put(0, SavedStates.create("a"));
+        store.put(5, SavedStates.create("b"));
+        byte[] data = store.dataAt(0);
+        byte[] compressed = store.compressedDataAt(0);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertArrayEquals(data, PagerAdapterState.inflate(compressed, data.length));
+        assertNull(PagerAdapterState.inflate(truncated, data.length));
+
+        PagerAdapterState state = parcel(new PagerAdapterState(new long[] { 0, 5 },
+            new int[] { data.length, store.dataAt(1).length }, new byte[2][],
+            new byte[][] { truncated, store.compressedDataAt(1) }, new long[0],
+            new Fragment.SavedState[0], new long[0], new int[0]));
+        assertNull(state.mStates[0]);
+
+        SavedStateStore restored = new SavedStateStore();
+        state.restoreStates(restored);
+        assertEquals(1, restored.size());
+        assertEquals("b", SavedStates.valueOf(restored.take(5)));
+    }
+
+    // *********************************************************************************************
+    private static PagerAdapterState parcel(PagerAdapterState state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(PagerAdapterState.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import com.sbrukhanda.fragmentviewpager.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the byte budget and the least recently visited eviction order of {@link SavedStateStore}.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SavedStateStoreTest
+{
+    // =============================================================================================
+    // Fields
+    // =============================================================================================
+
+    private SavedStateStore mStore;
+    private List<Long>      mEvicted;
+
+    /**
+     * The size of a single stored state, as all states of these tests hold equally long values.
+     */
+    private int mStateBytes;
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    @Before
+    public void setUp() {
+        mEvicted = new ArrayList<Long>();
+        mStore = new SavedStateStore();
+        mStore.setOnSavedStateEvictedListener(new OnSavedStateEvictedListener() {
+            @Override
+            public void onSavedStateEvicted(long itemId) {
+                mEvicted.add(itemId);
+            }
+        });
+
+        mStore.put(-1, SavedStates.create("x"));
+        mStateBytes = mStore.getTotalBytes();
+        mStore.remove(-1);
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void keepsAllStatesByDefault() {
+        for (int i=0; i<100; i++) {
+            mStore.put(i, SavedStates.create("a"));
+        }
+
+        assertEquals(SavedStateStore.UNBOUNDED, mStore.getMaxBytes());
+        assertEquals(100, mStore.size());
+        assertEquals(100 * mStateBytes, mStore.getTotalBytes());
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void evictsLeastRecentlyVisitedStatesOverBudget() {
+        mStore.setMaxBytes(2 * mStateBytes);
+        mStore.put(0, SavedStates.create("a"));
+        mStore.put(1, SavedStates.create("b"));
+        mStore.put(2, SavedStates.create("c"));
+
+        assertEquals(Arrays.asList(0L), mEvicted);
+        assertEquals(2, mStore.size());
+        assertEquals(2 * mStateBytes, mStore.getTotalBytes());
+        assertNull(mStore.take(0));
+        assertEquals("b", SavedStates.valueOf(mStore.take(1)));
+        assertEquals("c", SavedStates.valueOf(mStore.take(2)));
+        assertEquals(0, mStore.getTotalBytes());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void storingStateAgainMakesItMostRecentlyVisited() {
+        mStore.setMaxBytes(2 * mStateBytes);
+        mStore.put(0, SavedStates.create("a"));
+        mStore.put(1, SavedStates.create("b"));
+        mStore.put(0, SavedStates.create("d"));
+        mStore.put(2, SavedStates.create("c"));
+
+        assertEquals(Arrays.asList(1L), mEvicted);
+        assertEquals("d", SavedStates.valueOf(mStore.take(0)));
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void shrinkingBudgetEvictsInVisitingOrder() {
+        mStore.put(2, SavedStates.create("a"));
+        mStore.put(0, SavedStates.create("b"));
+        mStore.put(1, SavedStates.create("c"));
+
+        mStore.setMaxBytes(mStateBytes);
+        assertEquals(Arrays.asList(2L, 0L), mEvicted);
+        assertEquals(mStateBytes, mStore.getTotalBytes());
+
+        mStore.setMaxBytes(0);
+        assertEquals(Arrays.asList(2L, 0L, 1L), mEvicted);
+        assertEquals(0, mStore.size());
+        assertEquals(0, mStore.getTotalBytes());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void removingStatesReleasesTheirBytes() {
+        mStore.put(0, SavedStates.create("a"));
+        mStore.put(1, SavedStates.create("b"));
+        mStore.remove(0);
+        assertEquals(mStateBytes, mStore.getTotalBytes());
+
+        mStore.clear();
+        assertEquals(0, mStore.size());
+        assertEquals(0, mStore.getTotalBytes());
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    // *********************************************************************************************
+    @Test
+    public void shiftingRetainsVisitingOrder() {
+        mStore.put(3, SavedStates.create("a"));
+        mStore.put(1, SavedStates.create("b"));
+        mStore.put(5, SavedStates.create("c"));
+        mStore.removeRange(2, 4);
+        mStore.shift(4, -2);
+
+        assertEquals(2, mStore.size());
+        assertEquals(1, mStore.keyAt(0));
+        assertEquals(3, mStore.keyAt(1));
+
+        mStore.setMaxBytes(mStateBytes);
+        assertEquals(Arrays.asList(1L), mEvicted);
+        assertEquals("c", SavedStates.valueOf(mStore.take(3)));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Serhiy Brukhanda
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sbrukhanda.fragmentviewpager.adapters;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+
+/**
+ * Provides utility functions for creating and inspecting {@code Fragment.SavedState}s in tests,
+ * as their constructor is not accessible outside the support library.
+ *
+ * @author Serhiy Brukhanda <http://lnkd.in/dMuBjh8>
+ */
+final class SavedStates
+{
+    // =============================================================================================
+    // Constants
+    // =============================================================================================
+
+    private static final String VALUE_KEY = "value";
+
+
+    // =============================================================================================
+    // Constructors & Methods
+    // =============================================================================================
+
+    // *********************************************************************************************
+    private SavedStates() {
+        // Prevent class instantiation
+    }
+
+    /**
+     * Creates a {@code Fragment.SavedState} that holds the specified value.
+     */
+    static Fragment.SavedState create(String value) {
+        Bundle bundle = new Bundle();
+        bundle.putString(VALUE_KEY, value);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            parcel.setDataPosition(0);
+            return Fragment.SavedState.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Returns the value held by the specified {@code Fragment.SavedState}, or {@code null} if there
+     * is none.
+     */
+    static String valueOf(Fragment.SavedState state) {
+        if (state == null) return null;
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            Bundle bundle = parcel.readBundle(SavedStates.class.getClassLoader());
+            return ((bundle != null) ? bundle.getString(VALUE_KEY) : null);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}